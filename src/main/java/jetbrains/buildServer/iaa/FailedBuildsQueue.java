@@ -0,0 +1,120 @@
+/*
+ * Copyright 2000-2018 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.iaa;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import jetbrains.buildServer.iaa.utils.TimeBudget;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Bounded queue of builds waiting for a worker.
+ * Finished builds go first, then builds of projects with a higher weight, then builds which failed earlier.
+ * Every build is presented in the queue at most once.
+ */
+class FailedBuildsQueue {
+  private static final Comparator<QueuedBuild> ORDER =
+    Comparator.comparing((QueuedBuild build) -> !build.myFinished)
+              .thenComparing(build -> -build.myWeight)
+              .thenComparingLong(build -> build.myFailureTime)
+              .thenComparingLong(build -> build.myBuildId);
+
+  private final int myCapacity;
+  private final TreeSet<QueuedBuild> myBuilds = new TreeSet<>(ORDER);
+  private final Map<Long, QueuedBuild> myBuildsById = new HashMap<>();
+
+  FailedBuildsQueue(final int capacity) {
+    myCapacity = Math.max(1, capacity);
+  }
+
+  /**
+   * Adds the build to the queue or updates its priority if the build is already queued.
+   * @return the lowest priority build which was removed to keep the queue bounded, or null if nothing was removed.
+   */
+  @Nullable
+  synchronized QueuedBuild offer(@NotNull final QueuedBuild build) {
+    QueuedBuild previous = myBuildsById.put(build.myBuildId, build);
+    if (previous != null) {
+      myBuilds.remove(previous);
+    }
+    myBuilds.add(build);
+
+    if (myBuilds.size() <= myCapacity) {
+      return null;
+    }
+
+    QueuedBuild shed = myBuilds.pollLast();
+    myBuildsById.remove(shed.myBuildId);
+    return shed;
+  }
+
+  @Nullable
+  synchronized QueuedBuild poll() {
+    QueuedBuild build = myBuilds.pollFirst();
+    if (build != null) {
+      myBuildsById.remove(build.myBuildId);
+    }
+    return build;
+  }
+
+  synchronized boolean isEmpty() {
+    return myBuilds.isEmpty();
+  }
+
+  synchronized int size() {
+    return myBuilds.size();
+  }
+
+  static final class QueuedBuild {
+    private final long myBuildId;
+    private final boolean myFinished;
+    private final double myWeight;
+    private final long myFailureTime;
+    @NotNull private final TimeBudget myCycleBudget;
+
+    QueuedBuild(final long buildId, final boolean finished, final double weight, final long failureTime) {
+      this(buildId, finished, weight, failureTime, TimeBudget.UNLIMITED);
+    }
+
+    QueuedBuild(final long buildId,
+                final boolean finished,
+                final double weight,
+                final long failureTime,
+                @NotNull final TimeBudget cycleBudget) {
+      myBuildId = buildId;
+      myFinished = finished;
+      myWeight = weight;
+      myFailureTime = failureTime;
+      myCycleBudget = cycleBudget;
+    }
+
+    long getBuildId() {
+      return myBuildId;
+    }
+
+    /**
+     * @return budget of the processing cycle which queued the build.
+     */
+    @NotNull
+    TimeBudget getCycleBudget() {
+      return myCycleBudget;
+    }
+  }
+}
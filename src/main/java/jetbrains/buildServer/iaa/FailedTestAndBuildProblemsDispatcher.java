@@ -20,19 +20,23 @@ import com.intellij.openapi.diagnostic.Logger;
 import jetbrains.buildServer.BuildProblemData;
 import jetbrains.buildServer.iaa.common.Constants;
 import jetbrains.buildServer.iaa.common.FailedBuildInfo;
+import jetbrains.buildServer.iaa.FailedBuildsQueue.QueuedBuild;
+import jetbrains.buildServer.iaa.PendingBuildsJournal.PendingBuild;
 import jetbrains.buildServer.iaa.processing.FailedTestAndBuildProblemsProcessor;
+import jetbrains.buildServer.iaa.utils.AutoAssignerMetrics;
 import jetbrains.buildServer.iaa.utils.CustomParameters;
+import jetbrains.buildServer.iaa.utils.TimeBudget;
 import jetbrains.buildServer.serverSide.*;
 import jetbrains.buildServer.util.ThreadUtil;
 import jetbrains.buildServer.util.executors.ExecutorsFactory;
 import org.jetbrains.annotations.NotNull;
 
+import java.io.File;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
+import java.util.Set;
+import java.util.concurrent.*;
 
 public class FailedTestAndBuildProblemsDispatcher {
 
@@ -40,23 +44,58 @@ public class FailedTestAndBuildProblemsDispatcher {
 
   @NotNull
   private final FailedTestAndBuildProblemsProcessor myProcessor;
-  // Map isn't synchronized because we work with it from synchronized method
   @NotNull
   private final ConcurrentHashMap<Long, FailedBuildInfo> myFailedBuilds;
+  // Builds which already have a pending event-driven pass. Further events of such builds are coalesced into it.
+  @NotNull
+  private final Set<Long> myScheduledBuilds;
+  // Builds which wait for a free worker
+  @NotNull
+  private final FailedBuildsQueue myQueue;
+  @NotNull
+  private final Semaphore myBuildsInFlight;
   @NotNull
   private final ScheduledExecutorService myDaemon;
+  // Every build is always handled by the same single-threaded worker, so a build is never processed concurrently
+  @NotNull
+  private final ExecutorService[] myWorkers;
+  @NotNull
+  private final AutoAssignerMetrics myMetrics;
+  @NotNull
+  private final BuildsManager myBuildsManager;
+  @NotNull
+  private final PendingBuildsJournal myJournal;
 
   public FailedTestAndBuildProblemsDispatcher(@NotNull final BuildServerListenerEventDispatcher buildServerListenerEventDispatcher,
-                                              @NotNull final FailedTestAndBuildProblemsProcessor processor) {
+                                              @NotNull final FailedTestAndBuildProblemsProcessor processor,
+                                              @NotNull final AutoAssignerMetrics metrics,
+                                              @NotNull final BuildsManager buildsManager,
+                                              @NotNull final ServerPaths serverPaths) {
     myProcessor = processor;
+    myMetrics = metrics;
+    myBuildsManager = buildsManager;
+    myJournal = new PendingBuildsJournal(
+      new File(new File(serverPaths.getPluginDataDirectory(), Constants.BUILD_FEATURE_TYPE), "pending-builds.journal"));
     myFailedBuilds = new ConcurrentHashMap<>();
+    myScheduledBuilds = ConcurrentHashMap.newKeySet();
+    myQueue = new FailedBuildsQueue(CustomParameters.getMaxQueuedBuilds());
+    myBuildsInFlight = new Semaphore(CustomParameters.getMaxBuildsInFlight());
     myDaemon = ExecutorsFactory.newFixedScheduledDaemonExecutor("Investigator-Auto-Assigner-", 1);
-    myDaemon.scheduleWithFixedDelay(this::processBrokenBuildsOneThread,
+    myWorkers = new ExecutorService[CustomParameters.getWorkersCount()];
+    for (int i = 0; i < myWorkers.length; i++) {
+      myWorkers[i] = ExecutorsFactory.newFixedDaemonExecutor("Investigator-Auto-Assigner-Worker-" + i + "-", 1);
+    }
+    myDaemon.scheduleWithFixedDelay(this::processBrokenBuilds,
             CustomParameters.getProcessingDelayInSeconds(),
             CustomParameters.getProcessingDelayInSeconds(),
             TimeUnit.SECONDS);
 
     buildServerListenerEventDispatcher.addListener(new BuildServerAdapter() {
+      @Override
+      public void serverStartup() {
+        restorePendingBuilds();
+      }
+
       @Override
       public void buildProblemsChanged(@NotNull SBuild sBuild,
                                        @NotNull List<BuildProblemData> before,
@@ -65,34 +104,230 @@ public class FailedTestAndBuildProblemsDispatcher {
           return;
         }
 
-        myFailedBuilds.putIfAbsent(sBuild.getBuildId(), new FailedBuildInfo(sBuild));
+        if (startTracking(sBuild)) {
+          scheduleProcessing(sBuild.getBuildId());
+        }
+      }
+
+      @Override
+      public void buildFinished(@NotNull SRunningBuild build) {
+        FailedBuildInfo failedBuildInfo = myFailedBuilds.get(build.getBuildId());
+        if (failedBuildInfo != null) {
+          failedBuildInfo.setFinished(true);
+          scheduleProcessing(build.getBuildId());
+        }
       }
 
       @Override
       public void serverShutdown() {
         ThreadUtil.shutdownGracefully(myDaemon, "Investigator-Auto-Assigner Daemon");
+        for (ExecutorService worker : myWorkers) {
+          ThreadUtil.shutdownGracefully(worker, "Investigator-Auto-Assigner Worker");
+        }
+        myJournal.close();
       }
     });
   }
 
-  private void processBrokenBuildsOneThread() {
+  private void restorePendingBuilds() {
+    if (!CustomParameters.isJournalEnabled()) {
+      return;
+    }
+
+    for (PendingBuild pendingBuild : myJournal.load()) {
+      SBuild sBuild = myBuildsManager.findBuildInstanceById(pendingBuild.getBuildId());
+      if (sBuild == null || !(sBuild instanceof BuildEx) || shouldIgnore(sBuild)) {
+        LOGGER.debug("Build #" + pendingBuild.getBuildId() + " from the journal is not found or should be ignored.");
+        continue;
+      }
+
+      FailedBuildInfo failedBuildInfo = new FailedBuildInfo(sBuild, pendingBuild.getFailureTime());
+      failedBuildInfo.setPriorityWeight(pendingBuild.getPriorityWeight());
+      failedBuildInfo.restoreProgress(pendingBuild.getTests(),
+                                      pendingBuild.getBuildProblems(),
+                                      pendingBuild.getProcessed());
+      failedBuildInfo.restorePendingWork(pendingBuild.getPendingTests(),
+                                         pendingBuild.getPendingBuildProblems(),
+                                         pendingBuild.getNextHeuristic());
+      myFailedBuilds.putIfAbsent(sBuild.getBuildId(), failedBuildInfo);
+    }
+
+    myJournal.open(myFailedBuilds.values());
+    if (!myFailedBuilds.isEmpty()) {
+      LOGGER.info("Processing of " + myFailedBuilds.size() + " failed builds is resumed after the server restart.");
+    }
+    TimeBudget cycleBudget = TimeBudget.ofMillis(CustomParameters.getCycleTimeBudgetInMillis());
+    myFailedBuilds.keySet().forEach(buildId -> submit(buildId, cycleBudget));
+  }
+
+  private boolean startTracking(@NotNull final SBuild sBuild) {
+    if (myFailedBuilds.containsKey(sBuild.getBuildId())) {
+      return true;
+    }
+
+    if (myFailedBuilds.size() >= CustomParameters.getMaxTrackedBuilds()) {
+      myMetrics.increment(AutoAssignerMetrics.DROPPED_BUILDS);
+      LOGGER.warn("Build #" + sBuild.getBuildId() + " is skipped as too many failed builds are being processed.");
+      return false;
+    }
+
+    FailedBuildInfo failedBuildInfo = new FailedBuildInfo(sBuild);
+    SBuildType sBuildType = sBuild.getBuildType();
+    if (sBuildType != null) {
+      failedBuildInfo.setPriorityWeight(CustomParameters.getProjectWeight(sBuildType.getProject()));
+    }
+    if (myFailedBuilds.putIfAbsent(sBuild.getBuildId(), failedBuildInfo) == null) {
+      myJournal.recordTracked(failedBuildInfo);
+    }
+    return true;
+  }
+
+  private void scheduleProcessing(final long buildId) {
+    if (!CustomParameters.isEventDrivenProcessingEnabled() || myDaemon.isShutdown()) {
+      return;
+    }
+
+    if (!myScheduledBuilds.add(buildId)) {
+      LOGGER.debug("Build #" + buildId + " is already scheduled for processing.");
+      return;
+    }
+
+    try {
+      myDaemon.schedule(() -> {
+        myScheduledBuilds.remove(buildId);
+        submit(buildId, TimeBudget.ofMillis(CustomParameters.getCycleTimeBudgetInMillis()));
+      }, CustomParameters.getEventsCoalescingDelayInMillis(), TimeUnit.MILLISECONDS);
+    } catch (RejectedExecutionException e) {
+      myScheduledBuilds.remove(buildId);
+      LOGGER.debug("Build #" + buildId + " was not scheduled for processing as the daemon is stopped.");
+    }
+  }
+
+  private void processBrokenBuilds() {
+    // In the event-driven mode this pass is a safety net: builds which were processed
+    // recently because of their own events are not scanned once more.
+    final boolean eventDriven = CustomParameters.isEventDrivenProcessingEnabled();
+    final long freshnessThreshold = System.currentTimeMillis() -
+                                    TimeUnit.SECONDS.toMillis(CustomParameters.getProcessingDelayInSeconds());
+    final TimeBudget cycleBudget = TimeBudget.ofMillis(CustomParameters.getCycleTimeBudgetInMillis());
     for (Map.Entry<Long, FailedBuildInfo> entry : myFailedBuilds.entrySet()) {
       FailedBuildInfo failedBuildInfo = entry.getValue();
-      processBrokenBuild(failedBuildInfo, entry.getKey());
+      if (eventDriven && !failedBuildInfo.hasPendingWork() && failedBuildInfo.getLastProcessedTime() > freshnessThreshold) {
+        continue;
+      }
+
+      submit(entry.getKey(), cycleBudget);
+    }
+
+    myJournal.compactIfNeeded(myFailedBuilds.values());
+    myJournal.sync();
+    if (LOGGER.isDebugEnabled()) {
+      LOGGER.debug(String.format("Tracked builds: %d, queued builds: %d, counters: %s",
+                                 myFailedBuilds.size(), myQueue.size(), myMetrics.getCounters()));
+    }
+  }
+
+  private void submit(final long buildId, @NotNull final TimeBudget cycleBudget) {
+    FailedBuildInfo failedBuildInfo = myFailedBuilds.get(buildId);
+    if (failedBuildInfo == null) {
+      return;
+    }
+
+    QueuedBuild shed = myQueue.offer(new QueuedBuild(buildId,
+                                                     failedBuildInfo.isFinished(),
+                                                     failedBuildInfo.getPriorityWeight(),
+                                                     failedBuildInfo.getFailureTime(),
+                                                     cycleBudget));
+    if (shed != null) {
+      // the build is still tracked, so the next periodic pass gives it one more chance
+      myMetrics.increment(AutoAssignerMetrics.SHED_BUILDS);
+      LOGGER.debug("Build #" + shed.getBuildId() + " is postponed as the processing queue is full.");
+    }
+    drainPendingBuilds();
+  }
+
+  /**
+   * Hands queued builds over to the workers while the number of builds in flight is below the limit.
+   * The remaining builds are handed over as soon as some worker completes its build.
+   */
+  private void drainPendingBuilds() {
+    while (myBuildsInFlight.tryAcquire()) {
+      final QueuedBuild queuedBuild = myQueue.poll();
+      if (queuedBuild == null) {
+        myBuildsInFlight.release();
+        // a build could be added while we were holding the permit
+        if (myQueue.isEmpty()) {
+          return;
+        }
+        continue;
+      }
+
+      final long buildId = queuedBuild.getBuildId();
+      try {
+        getWorker(buildId).execute(() -> {
+          try {
+            FailedBuildInfo failedBuildInfo = myFailedBuilds.get(buildId);
+            if (failedBuildInfo != null) {
+              processBrokenBuild(failedBuildInfo, queuedBuild.getCycleBudget());
+            }
+          } finally {
+            myBuildsInFlight.release();
+            drainPendingBuilds();
+          }
+        });
+      } catch (RejectedExecutionException e) {
+        myBuildsInFlight.release();
+        LOGGER.debug("Build #" + buildId + " was not processed as the workers are stopped.");
+      }
     }
   }
 
-  private void processBrokenBuild(final FailedBuildInfo failedBuildInfo, final Long buildKey) {
-    boolean shouldRemove = failedBuildInfo.getBuild().isFinished();
-    myProcessor.processBuild(failedBuildInfo);
+  @NotNull
+  private ExecutorService getWorker(final long buildId) {
+    return myWorkers[(int)Math.floorMod(buildId, (long)myWorkers.length)];
+  }
 
-    if (shouldRemove) {
-      long buildId = failedBuildInfo.getBuild().getBuildId();
-      myFailedBuilds.remove(buildKey);
+  private void processBrokenBuild(@NotNull final FailedBuildInfo failedBuildInfo, @NotNull final TimeBudget cycleBudget) {
+    final long buildId = failedBuildInfo.getBuildId();
+    if (cycleBudget.isExceeded()) {
+      // the build stays tracked and is processed in the next cycle
+      myMetrics.increment(AutoAssignerMetrics.CYCLE_BUDGET_EXCEEDED);
+      LOGGER.debug("Build #" + buildId + " is postponed till the next cycle as the cycle time budget is exceeded.");
+      return;
+    }
+
+    SBuild sBuild = myBuildsManager.findBuildInstanceById(buildId);
+    if (sBuild == null) {
+      myMetrics.increment(AutoAssignerMetrics.EVICTED_BUILDS);
+      stopTracking(buildId);
+      LOGGER.debug("Build #" + buildId + " removed from processing as it is not found anymore.");
+      return;
+    }
+
+    final boolean finished = sBuild.isFinished();
+    failedBuildInfo.setFinished(finished);
+    try {
+      myProcessor.processBuild(failedBuildInfo, sBuild, cycleBudget);
+    } catch (Exception e) {
+      LOGGER.warn("Failed to process build #" + buildId + ": " + e.getMessage());
+      LOGGER.debug(e);
+    } finally {
+      failedBuildInfo.setLastProcessedTime(System.currentTimeMillis());
+      myJournal.recordProgress(failedBuildInfo);
+    }
+
+    if (finished && !failedBuildInfo.hasPendingWork()) {
+      stopTracking(buildId);
       LOGGER.debug("Build #" + buildId + " removed from processing.");
     }
   }
 
+  private void stopTracking(final long buildId) {
+    if (myFailedBuilds.remove(buildId) != null) {
+      myJournal.recordRemoved(buildId);
+    }
+  }
+
   private static boolean shouldIgnore(@NotNull SBuild build) {
     return checkFeatureDisabled(build) || build.isPersonal();
   }
@@ -0,0 +1,397 @@
+/*
+ * Copyright 2000-2018 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.iaa;
+
+import com.intellij.openapi.diagnostic.Logger;
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import jetbrains.buildServer.iaa.common.FailedBuildInfo;
+import jetbrains.buildServer.iaa.utils.IntHashSet;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Append-only journal of the builds which are being processed. It allows to continue processing after
+ * a server restart. Every record starts with its type and the build id. A torn record at the end of the file,
+ * e.g. after a crash, is ignored while loading.
+ * The journal is rewritten from the state of the tracked builds once the appended records take several times
+ * more space than that state took at the previous rewrite.
+ */
+class PendingBuildsJournal {
+  private static final Logger LOGGER = Logger.getInstance(PendingBuildsJournal.class.getName());
+  private static final int BUFFER_SIZE = 64 * 1024;
+  private static final int COMPACTION_RATIO = 4;
+  private static final long MIN_COMPACTION_SIZE = 1024 * 1024;
+
+  private static final byte TRACKED = 1;
+  private static final byte PROCESSED_TESTS = 2;
+  private static final byte PROCESSED_BUILD_PROBLEMS = 3;
+  private static final byte PROCESSED_COUNTER = 4;
+  private static final byte REMOVED = 5;
+  private static final byte PENDING_WORK = 6;
+
+  @NotNull private final File myFile;
+  @Nullable private FileOutputStream myFileStream;
+  @Nullable private DataOutputStream myOutput;
+  // Size of the journal right after it was rewritten for the last time
+  private long myCompactedSize = 0;
+
+  PendingBuildsJournal(@NotNull final File file) {
+    myFile = file;
+  }
+
+  /**
+   * Reads the journal with a single sequential pass.
+   * @return builds which were tracked and not removed by the time the journal was written for the last time.
+   */
+  @NotNull
+  synchronized Collection<PendingBuild> load() {
+    Map<Long, PendingBuild> result = new LinkedHashMap<>();
+    if (!myFile.isFile()) {
+      return result.values();
+    }
+
+    try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(myFile), BUFFER_SIZE))) {
+      while (true) {
+        final int type = input.read();
+        if (type == -1) {
+          break;
+        }
+
+        final long buildId = input.readLong();
+        switch (type) {
+          case TRACKED:
+            result.put(buildId, new PendingBuild(buildId, input.readLong(), input.readDouble()));
+            break;
+          case PROCESSED_TESTS:
+          case PROCESSED_BUILD_PROBLEMS:
+            final int count = input.readInt();
+            final PendingBuild build = result.get(buildId);
+            for (int i = 0; i < count; i++) {
+              int id = input.readInt();
+              if (build != null) {
+                (type == PROCESSED_TESTS ? build.myTests : build.myBuildProblems).add(id);
+              }
+            }
+            break;
+          case PROCESSED_COUNTER:
+            final int processed = input.readInt();
+            final PendingBuild counterOwner = result.get(buildId);
+            if (counterOwner != null) {
+              counterOwner.myProcessed = processed;
+            }
+            break;
+          case PENDING_WORK:
+            final int nextHeuristic = input.readInt();
+            final IntHashSet pendingTests = readIds(input);
+            final IntHashSet pendingBuildProblems = readIds(input);
+            final PendingBuild pendingWorkOwner = result.get(buildId);
+            if (pendingWorkOwner != null) {
+              pendingWorkOwner.myPendingTests = pendingTests;
+              pendingWorkOwner.myPendingBuildProblems = pendingBuildProblems;
+              pendingWorkOwner.myNextHeuristic = nextHeuristic;
+            }
+            break;
+          case REMOVED:
+            result.remove(buildId);
+            break;
+          default:
+            LOGGER.warn("Journal " + myFile + " is corrupted, the rest of it is ignored.");
+            return result.values();
+        }
+      }
+    } catch (EOFException e) {
+      LOGGER.debug("Journal " + myFile + " ends with an incomplete record, it is ignored.");
+    } catch (IOException e) {
+      LOGGER.warn("Failed to read journal " + myFile + ": " + e.getMessage());
+    }
+    return result.values();
+  }
+
+  /**
+   * Replaces the journal with the records of the given builds only and opens it for appending.
+   */
+  synchronized void open(@NotNull final Collection<FailedBuildInfo> failedBuilds) {
+    rewrite(failedBuilds);
+  }
+
+  /**
+   * Rewrites the journal from the given builds if the records appended since the previous rewrite take
+   * too much space.
+   * @param failedBuilds all tracked builds.
+   */
+  synchronized void compactIfNeeded(@NotNull final Collection<FailedBuildInfo> failedBuilds) {
+    if (myOutput == null) return;
+
+    if (myOutput.size() > Math.max(MIN_COMPACTION_SIZE, myCompactedSize * COMPACTION_RATIO)) {
+      rewrite(failedBuilds);
+      LOGGER.debug("Journal " + myFile + " is compacted to " + myCompactedSize + " bytes.");
+    }
+  }
+
+  /**
+   * Replaces the journal with the state of the given builds and opens it for appending.
+   */
+  private void rewrite(@NotNull final Collection<FailedBuildInfo> failedBuilds) {
+    close();
+    final File parent = myFile.getParentFile();
+    if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+      LOGGER.warn("Failed to create directory " + parent + ", pending builds will not be saved.");
+      return;
+    }
+
+    final File compacted = new File(myFile.getPath() + ".tmp");
+    try {
+      try (DataOutputStream output =
+             new DataOutputStream(new BufferedOutputStream(new FileOutputStream(compacted), BUFFER_SIZE))) {
+        for (FailedBuildInfo failedBuildInfo : failedBuilds) {
+          // the build may be processed by a worker meanwhile
+          synchronized (failedBuildInfo) {
+            writeTracked(output, failedBuildInfo);
+            writeIds(output, PROCESSED_TESTS, failedBuildInfo.getBuildId(), failedBuildInfo.getProcessedTestRuns());
+            writeIds(output, PROCESSED_BUILD_PROBLEMS, failedBuildInfo.getBuildId(),
+                     failedBuildInfo.getProcessedBuildProblems());
+            writeCounter(output, failedBuildInfo);
+            if (failedBuildInfo.hasPendingWork()) {
+              writePendingWork(output, failedBuildInfo);
+            }
+            failedBuildInfo.markProgressSaved();
+          }
+        }
+        myCompactedSize = output.size();
+      }
+      try {
+        Files.move(compacted.toPath(), myFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                   StandardCopyOption.ATOMIC_MOVE);
+      } catch (IOException e) {
+        Files.move(compacted.toPath(), myFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      }
+
+      myFileStream = new FileOutputStream(myFile, true);
+      myOutput = new DataOutputStream(new BufferedOutputStream(myFileStream, BUFFER_SIZE));
+    } catch (IOException e) {
+      LOGGER.warn("Failed to open journal " + myFile + ", pending builds will not be saved: " + e.getMessage());
+      close();
+    }
+  }
+
+  synchronized void recordTracked(@NotNull final FailedBuildInfo failedBuildInfo) {
+    if (myOutput == null) return;
+
+    try {
+      writeTracked(myOutput, failedBuildInfo);
+      myOutput.flush();
+    } catch (IOException e) {
+      onWriteFailed(e);
+    }
+  }
+
+  /**
+   * Appends ids which were processed since the previous call, and the counter and the pending items
+   * if they are changed.
+   */
+  synchronized void recordProgress(@NotNull final FailedBuildInfo failedBuildInfo) {
+    if (myOutput == null) {
+      failedBuildInfo.markProgressSaved();
+      return;
+    }
+
+    final long buildId = failedBuildInfo.getBuildId();
+    try {
+      synchronized (failedBuildInfo) {
+        writeIds(myOutput, PROCESSED_TESTS, buildId, failedBuildInfo.getUnsavedTestRuns());
+        writeIds(myOutput, PROCESSED_BUILD_PROBLEMS, buildId, failedBuildInfo.getUnsavedBuildProblems());
+        if (!failedBuildInfo.isProcessedCountSaved()) {
+          writeCounter(myOutput, failedBuildInfo);
+        }
+        if (!failedBuildInfo.isPendingWorkSaved()) {
+          writePendingWork(myOutput, failedBuildInfo);
+        }
+        failedBuildInfo.markProgressSaved();
+      }
+      myOutput.flush();
+    } catch (IOException e) {
+      onWriteFailed(e);
+    }
+  }
+
+  synchronized void recordRemoved(final long buildId) {
+    if (myOutput == null) return;
+
+    try {
+      myOutput.writeByte(REMOVED);
+      myOutput.writeLong(buildId);
+      myOutput.flush();
+    } catch (IOException e) {
+      onWriteFailed(e);
+    }
+  }
+
+  /**
+   * Forces written records to the storage device.
+   */
+  synchronized void sync() {
+    if (myFileStream == null) return;
+
+    try {
+      myFileStream.getChannel().force(false);
+    } catch (IOException e) {
+      onWriteFailed(e);
+    }
+  }
+
+  synchronized void close() {
+    if (myOutput == null) return;
+
+    try {
+      myOutput.flush();
+      myFileStream.getChannel().force(false);
+      myOutput.close();
+    } catch (IOException e) {
+      LOGGER.debug("Failed to close journal " + myFile + ": " + e.getMessage());
+    } finally {
+      myOutput = null;
+      myFileStream = null;
+    }
+  }
+
+  private void onWriteFailed(@NotNull final IOException e) {
+    LOGGER.warn("Failed to write journal " + myFile + ", pending builds will not be saved: " + e.getMessage());
+    close();
+  }
+
+  private static void writeTracked(@NotNull final DataOutputStream output,
+                                   @NotNull final FailedBuildInfo failedBuildInfo) throws IOException {
+    output.writeByte(TRACKED);
+    output.writeLong(failedBuildInfo.getBuildId());
+    output.writeLong(failedBuildInfo.getFailureTime());
+    output.writeDouble(failedBuildInfo.getPriorityWeight());
+  }
+
+  private static void writeCounter(@NotNull final DataOutputStream output,
+                                   @NotNull final FailedBuildInfo failedBuildInfo) throws IOException {
+    output.writeByte(PROCESSED_COUNTER);
+    output.writeLong(failedBuildInfo.getBuildId());
+    output.writeInt(failedBuildInfo.processed);
+  }
+
+  /**
+   * Items which were applicable but left without a responsible user, they are written as a whole
+   * and replace the previous record.
+   */
+  private static void writePendingWork(@NotNull final DataOutputStream output,
+                                       @NotNull final FailedBuildInfo failedBuildInfo) throws IOException {
+    output.writeByte(PENDING_WORK);
+    output.writeLong(failedBuildInfo.getBuildId());
+    output.writeInt(failedBuildInfo.getNextHeuristic());
+    writeIds(output, failedBuildInfo.getPendingTestRuns());
+    writeIds(output, failedBuildInfo.getPendingBuildProblems());
+  }
+
+  private static void writeIds(@NotNull final DataOutputStream output,
+                               @NotNull final IntHashSet ids) throws IOException {
+    output.writeInt(ids.size());
+    for (int id : ids.toArray()) {
+      output.writeInt(id);
+    }
+  }
+
+  @NotNull
+  private static IntHashSet readIds(@NotNull final DataInputStream input) throws IOException {
+    final int count = input.readInt();
+    // the count is not trusted for the preallocation, the record may be torn
+    final IntHashSet ids = new IntHashSet();
+    for (int i = 0; i < count; i++) {
+      ids.add(input.readInt());
+    }
+    return ids;
+  }
+
+  private static void writeIds(@NotNull final DataOutputStream output,
+                               final byte type,
+                               final long buildId,
+                               @NotNull final IntHashSet ids) throws IOException {
+    if (ids.isEmpty()) return;
+
+    output.writeByte(type);
+    output.writeLong(buildId);
+    output.writeInt(ids.size());
+    for (int id : ids.toArray()) {
+      output.writeInt(id);
+    }
+  }
+
+  static final class PendingBuild {
+    private final long myBuildId;
+    private final long myFailureTime;
+    private final double myPriorityWeight;
+    private final IntHashSet myTests = new IntHashSet();
+    private final IntHashSet myBuildProblems = new IntHashSet();
+    private int myProcessed;
+    private IntHashSet myPendingTests = new IntHashSet();
+    private IntHashSet myPendingBuildProblems = new IntHashSet();
+    private int myNextHeuristic;
+
+    private PendingBuild(final long buildId, final long failureTime, final double priorityWeight) {
+      myBuildId = buildId;
+      myFailureTime = failureTime;
+      myPriorityWeight = priorityWeight;
+    }
+
+    long getBuildId() {
+      return myBuildId;
+    }
+
+    long getFailureTime() {
+      return myFailureTime;
+    }
+
+    double getPriorityWeight() {
+      return myPriorityWeight;
+    }
+
+    @NotNull
+    IntHashSet getTests() {
+      return myTests;
+    }
+
+    @NotNull
+    IntHashSet getBuildProblems() {
+      return myBuildProblems;
+    }
+
+    int getProcessed() {
+      return myProcessed;
+    }
+
+    @NotNull
+    IntHashSet getPendingTests() {
+      return myPendingTests;
+    }
+
+    @NotNull
+    IntHashSet getPendingBuildProblems() {
+      return myPendingBuildProblems;
+    }
+
+    int getNextHeuristic() {
+      return myNextHeuristic;
+    }
+  }
+}
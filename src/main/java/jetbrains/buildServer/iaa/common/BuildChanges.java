@@ -0,0 +1,203 @@
+/*
+ * Copyright 2000-2018 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.iaa.common;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import jetbrains.buildServer.serverSide.BuildPromotion;
+import jetbrains.buildServer.serverSide.BuildPromotionEx;
+import jetbrains.buildServer.serverSide.ChangeDescriptor;
+import jetbrains.buildServer.serverSide.SBuild;
+import jetbrains.buildServer.users.SUser;
+import jetbrains.buildServer.vcs.SVcsModification;
+import jetbrains.buildServer.vcs.SelectPrevBuildPolicy;
+import jetbrains.buildServer.vcs.VcsFileModification;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Changes of a build since the last build. Every part is computed on the first request and kept, as the changes
+ * of a build don't change after it starts. Only users and file paths are kept, not the VCS model objects.
+ * When a cache is given, the computed parts are shared by all builds with the same set of changes.
+ */
+public final class BuildChanges {
+  static final SelectPrevBuildPolicy PREV_BUILD_POLICY = SelectPrevBuildPolicy.SINCE_LAST_BUILD;
+
+  @Nullable private final ChangeSetCache myCache;
+  @Nullable private volatile ChangeSet myChangeSet;
+
+  public BuildChanges() {
+    this(null);
+  }
+
+  public BuildChanges(@Nullable final ChangeSetCache cache) {
+    myCache = cache;
+  }
+
+  @NotNull
+  public Set<SUser> getCommitters(@NotNull final SBuild sBuild) {
+    return getChangeSet(sBuild, false).getCommitters(sBuild);
+  }
+
+  /**
+   * @return modifications which have a related VCS change, in the order they were detected.
+   */
+  @NotNull
+  public List<Modification> getModifications(@NotNull final SBuild sBuild) {
+    return getChangeSet(sBuild, true).getModifications(sBuild);
+  }
+
+  @NotNull
+  public ChangedFilesMatcher getChangedFilesMatcher(@NotNull final SBuild sBuild) {
+    return getChangeSet(sBuild, true).getChangedFilesMatcher(sBuild);
+  }
+
+  /**
+   * @return committers if they are already computed for this build or another build with the same changes, otherwise null.
+   */
+  @Nullable
+  public Set<SUser> getLoadedCommitters() {
+    final ChangeSet changeSet = myChangeSet;
+    return changeSet != null ? changeSet.myCommitters : null;
+  }
+
+  /**
+   * @return modifications if they are already computed for this build or another build with the same changes,
+   * otherwise null.
+   */
+  @Nullable
+  public List<Modification> getLoadedModifications() {
+    final ChangeSet changeSet = myChangeSet;
+    return changeSet != null ? changeSet.myModifications : null;
+  }
+
+  @NotNull
+  private ChangeSet getChangeSet(@NotNull final SBuild sBuild, final boolean withModifications) {
+    ChangeSet changeSet = myChangeSet;
+    if (changeSet == null) {
+      changeSet = myCache != null ? myCache.getChangeSet(sBuild, withModifications) : new ChangeSet();
+      myChangeSet = changeSet;
+    }
+    return changeSet;
+  }
+
+  /**
+   * Parts of the changes which depend only on the set of changes, so they can be computed
+   * from any build with this set of changes.
+   */
+  static final class ChangeSet {
+    @Nullable private volatile Set<SUser> myCommitters;
+    @Nullable private volatile List<Modification> myModifications;
+    @Nullable private volatile ChangedFilesMatcher myChangedFilesMatcher;
+
+    @NotNull
+    Set<SUser> getCommitters(@NotNull final SBuild sBuild) {
+      Set<SUser> committers = myCommitters;
+      if (committers == null) {
+        committers = Collections.unmodifiableSet(sBuild.getCommitters(PREV_BUILD_POLICY).getUsers());
+        myCommitters = committers;
+      }
+      return committers;
+    }
+
+    @NotNull
+    List<Modification> getModifications(@NotNull final SBuild sBuild) {
+      final List<Modification> modifications = myModifications;
+      return modifications != null ? modifications : setModifications(getDetectedChanges(sBuild));
+    }
+
+    /**
+     * Computes the modifications from the given changes unless they are already computed.
+     * The changes themselves are not kept.
+     */
+    @NotNull
+    List<Modification> setModifications(@NotNull final List<ChangeDescriptor> detectedChanges) {
+      List<Modification> modifications = myModifications;
+      if (modifications == null) {
+        modifications = Collections.unmodifiableList(computeModifications(detectedChanges));
+        myModifications = modifications;
+      }
+      return modifications;
+    }
+
+    @NotNull
+    ChangedFilesMatcher getChangedFilesMatcher(@NotNull final SBuild sBuild) {
+      ChangedFilesMatcher matcher = myChangedFilesMatcher;
+      if (matcher == null) {
+        matcher = new ChangedFilesMatcher(getModifications(sBuild));
+        myChangedFilesMatcher = matcher;
+      }
+      return matcher;
+    }
+  }
+
+  @NotNull
+  static List<ChangeDescriptor> getDetectedChanges(@NotNull final SBuild sBuild) {
+    final BuildPromotion buildPromotion = sBuild.getBuildPromotion();
+    if (!(buildPromotion instanceof BuildPromotionEx)) return Collections.emptyList();
+
+    return ((BuildPromotionEx)buildPromotion).getDetectedChanges(PREV_BUILD_POLICY, true);
+  }
+
+  @NotNull
+  private static List<Modification> computeModifications(@NotNull final List<ChangeDescriptor> detectedChanges) {
+    List<Modification> result = new ArrayList<>();
+    for (ChangeDescriptor descriptor : detectedChanges) {
+      SVcsModification vcsChange = descriptor.getRelatedVcsChange();
+      if (vcsChange == null) continue;
+
+      List<String> filePaths = new ArrayList<>();
+      for (VcsFileModification fileModification : vcsChange.getChanges()) {
+        filePaths.add(fileModification.getRelativeFileName());
+      }
+      result.add(new Modification(vcsChange.getId(), new ArrayList<>(vcsChange.getCommitters()), filePaths));
+    }
+    return result;
+  }
+
+  public static final class Modification {
+    private final long myId;
+    @NotNull private final Collection<SUser> myCommitters;
+    @NotNull private final List<String> myFilePaths;
+
+    Modification(final long id, @NotNull final Collection<SUser> committers, @NotNull final List<String> filePaths) {
+      myId = id;
+      myCommitters = committers;
+      myFilePaths = filePaths;
+    }
+
+    public long getId() {
+      return myId;
+    }
+
+    @NotNull
+    public Collection<SUser> getCommitters() {
+      return myCommitters;
+    }
+
+    /**
+     * @return relative paths of the changed files.
+     */
+    @NotNull
+    public List<String> getFilePaths() {
+      return myFilePaths;
+    }
+  }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2000-2018 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.iaa.common;
+
+import com.intellij.openapi.diagnostic.Logger;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import jetbrains.buildServer.iaa.common.BuildChanges.ChangeSet;
+import jetbrains.buildServer.iaa.utils.CustomParameters;
+import jetbrains.buildServer.serverSide.ChangeDescriptor;
+import jetbrains.buildServer.serverSide.SBuild;
+import jetbrains.buildServer.vcs.SVcsModification;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * LRU cache of change sets keyed by the ids of the changes. Builds of one revision in different configurations
+ * (e.g. a snapshot dependency chain) have the same changes, so their committers, changed files and matches
+ * of the changed files are computed once.
+ */
+public class ChangeSetCache {
+  private static final Logger LOGGER = Logger.getInstance(ChangeSetCache.class.getName());
+
+  private final int myMaxSize;
+  private final Map<Key, ChangeSet> myCache = new LinkedHashMap<>(16, 0.75f, true);
+
+  public ChangeSetCache() {
+    this(CustomParameters.getChangeSetsCacheSize());
+  }
+
+  ChangeSetCache(final int maxSize) {
+    myMaxSize = maxSize;
+  }
+
+  /**
+   * @param withModifications true if the modifications are needed right away. Then they are computed from the changes
+   *                          detected for the key, otherwise the changes are not kept and are detected again on demand.
+   */
+  @NotNull
+  ChangeSet getChangeSet(@NotNull final SBuild sBuild, final boolean withModifications) {
+    if (myMaxSize == 0 || sBuild.isPersonal()) return new ChangeSet();
+
+    final List<ChangeDescriptor> detectedChanges = BuildChanges.getDetectedChanges(sBuild);
+    final ChangeSet changeSet = getChangeSet(sBuild, getKey(detectedChanges));
+    if (withModifications) {
+      changeSet.setModifications(detectedChanges);
+    }
+    return changeSet;
+  }
+
+  @NotNull
+  private ChangeSet getChangeSet(@NotNull final SBuild sBuild, @Nullable final Key key) {
+    if (key == null) return new ChangeSet();
+
+    synchronized (myCache) {
+      ChangeSet changeSet = myCache.get(key);
+      if (changeSet != null) {
+        if (LOGGER.isDebugEnabled()) {
+          LOGGER.debug("Reusing changes of another build with the same changes for build #" + sBuild.getBuildId());
+        }
+        return changeSet;
+      }
+
+      changeSet = new ChangeSet();
+      myCache.put(key, changeSet);
+      if (myCache.size() > myMaxSize) {
+        myCache.remove(myCache.keySet().iterator().next());
+      }
+      return changeSet;
+    }
+  }
+
+  /**
+   * @return sorted ids of the changes, or null if the changes should not be shared.
+   */
+  @Nullable
+  private static Key getKey(@NotNull final List<ChangeDescriptor> descriptors) {
+    final long[] ids = new long[descriptors.size()];
+    int count = 0;
+    for (ChangeDescriptor descriptor : descriptors) {
+      final SVcsModification vcsChange = descriptor.getRelatedVcsChange();
+      // ids of personal changes are not unique among the regular ones
+      if (vcsChange == null || vcsChange.isPersonal()) return null;
+
+      ids[count++] = vcsChange.getId();
+    }
+    if (count == 0) return null;
+
+    Arrays.sort(ids);
+    return new Key(ids);
+  }
+
+  private static final class Key {
+    @NotNull private final long[] myIds;
+    private final int myHash;
+
+    Key(@NotNull final long[] ids) {
+      myIds = ids;
+      myHash = Arrays.hashCode(ids);
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+      return this == o || o instanceof Key && Arrays.equals(myIds, ((Key)o).myIds);
+    }
+
+    @Override
+    public int hashCode() {
+      return myHash;
+    }
+  }
+}
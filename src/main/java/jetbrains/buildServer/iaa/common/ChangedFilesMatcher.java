@@ -0,0 +1,175 @@
+/*
+ * Copyright 2000-2018 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.iaa.common;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import jetbrains.buildServer.iaa.common.BuildChanges.Modification;
+import jetbrains.buildServer.iaa.utils.MultiPatternMatcher;
+import jetbrains.buildServer.iaa.utils.StackTraceParser;
+import jetbrains.buildServer.util.FileUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import static com.intellij.openapi.util.text.StringUtil.join;
+
+/**
+ * Finds changed files mentioned in a problem text. If the text contains stack frames, the files referenced
+ * from the frames are looked up in a hash index of the changed files. If none of them is found, patterns of all files
+ * of the build are compiled into one automaton, so a text is scanned once regardless of the number of changed files.
+ * Results for recent texts are kept, as builds with the same changes share the matcher and often fail the same way.
+ */
+public final class ChangedFilesMatcher {
+  private static final int MAX_MATCHES_COUNT = 1000;
+
+  private final MultiPatternMatcher myMatcher;
+  // Pattern index -> modification index and index of the file within the modification
+  private final int[] myPatternModifications;
+  private final int[] myPatternFiles;
+  private final int myModificationsCount;
+  // Stack trace file key -> encoded modification and file indexes of the changed files with this key
+  private final Map<String, long[]> myFileKeyIndex = new HashMap<>();
+  // Problem text -> found files. The texts are bounded by ProblemTextExtractor.
+  private final Map<String, int[]> myMatches = new LinkedHashMap<>(16, 0.75f, true);
+
+  ChangedFilesMatcher(@NotNull final List<Modification> modifications) {
+    List<String> patterns = new ArrayList<>();
+    List<Integer> patternModifications = new ArrayList<>();
+    List<Integer> patternFiles = new ArrayList<>();
+    for (int i = 0; i < modifications.size(); i++) {
+      List<String> filePaths = modifications.get(i).getFilePaths();
+      for (int j = 0; j < filePaths.size(); j++) {
+        addToFileKeyIndex(filePaths.get(j), i, j);
+        for (String pattern : getPatterns(filePaths.get(j))) {
+          patterns.add(pattern);
+          patternModifications.add(i);
+          patternFiles.add(j);
+        }
+      }
+    }
+
+    myMatcher = new MultiPatternMatcher(patterns);
+    myPatternModifications = patternModifications.stream().mapToInt(Integer::intValue).toArray();
+    myPatternFiles = patternFiles.stream().mapToInt(Integer::intValue).toArray();
+    myModificationsCount = modifications.size();
+  }
+
+  /**
+   * @return for every modification the index of its first file which is mentioned in the text, or -1.
+   */
+  @NotNull
+  public int[] findFirstMentionedFiles(@NotNull final String problemText) {
+    synchronized (myMatches) {
+      final int[] matches = myMatches.get(problemText);
+      if (matches != null) return matches.clone();
+    }
+
+    final int[] result = computeFirstMentionedFiles(problemText);
+    synchronized (myMatches) {
+      myMatches.put(problemText, result.clone());
+      if (myMatches.size() > MAX_MATCHES_COUNT) {
+        myMatches.remove(myMatches.keySet().iterator().next());
+      }
+    }
+    return result;
+  }
+
+  @NotNull
+  private int[] computeFirstMentionedFiles(@NotNull final String problemText) {
+    final int[] result = new int[myModificationsCount];
+    Arrays.fill(result, Integer.MAX_VALUE);
+
+    // files referenced from the stack frames are the most precise match, when none of them is changed
+    // the whole text is scanned, as changed files may be mentioned in the message or be resources and configs
+    boolean frameMatched = false;
+    for (String fileKey : StackTraceParser.parseFileKeys(problemText)) {
+      final long[] files = myFileKeyIndex.get(fileKey);
+      if (files == null) continue;
+
+      frameMatched = true;
+      for (long file : files) {
+        final int modification = (int)(file >>> 32);
+        result[modification] = Math.min(result[modification], (int)file);
+      }
+    }
+
+    if (!frameMatched) {
+      myMatcher.findAll(problemText, pattern -> {
+        final int modification = myPatternModifications[pattern];
+        result[modification] = Math.min(result[modification], myPatternFiles[pattern]);
+      });
+    }
+
+    for (int i = 0; i < result.length; i++) {
+      if (result[i] == Integer.MAX_VALUE) {
+        result[i] = -1;
+      }
+    }
+    return result;
+  }
+
+  private void addToFileKeyIndex(@NotNull final String filePath, final int modification, final int file) {
+    final String fileKey = StackTraceParser.getFileKey(filePath);
+    if (fileKey == null) return;
+
+    final long encoded = ((long)modification << 32) | file;
+    final long[] files = myFileKeyIndex.get(fileKey);
+    if (files == null) {
+      myFileKeyIndex.put(fileKey, new long[]{encoded});
+    } else {
+      final long[] extended = Arrays.copyOf(files, files.length + 1);
+      extended[files.length] = encoded;
+      myFileKeyIndex.put(fileKey, extended);
+    }
+  }
+
+  /**
+   * This method is required to separate path1/path2/fileName with path3/path4/fileName.
+   * Also it allows to handle different separators. Currently supported: '.','/','\' separators.
+   * @param filePath - filePath of the modification
+   * @return various combination of fileName and its parents(up to 2th level) with separators.
+   */
+  @NotNull
+  static List<String> getPatterns(@NotNull final String filePath) {
+    final List<String> parts = new ArrayList<>();
+    parts.add(FileUtil.getNameWithoutExtension(new File(filePath)));
+
+    String path = getParentPath(filePath);
+    if (path != null) {
+      parts.add(0, new File(path).getName());
+      path = getParentPath(path);
+      if (path != null) {
+        parts.add(0, new File(path).getName());
+      }
+    }
+
+    return Arrays.asList(join(parts, "."), join(parts, "/"), join(parts, "\\"));
+  }
+
+  // we do not use File#getParentFile() instead because we must not take current
+  // working directory into account, i.e. getParentPath("abc") must return null
+  @Nullable
+  private static String getParentPath(@NotNull final String path) {
+    final int lastSlashPos = path.replace('\\', '/').lastIndexOf('/');
+    return lastSlashPos == -1 ? null : path.substring(0, lastSlashPos);
+  }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2000-2018 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.iaa.common;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import jetbrains.buildServer.BuildProblemTypes;
+import jetbrains.buildServer.iaa.utils.IntHashSet;
+import jetbrains.buildServer.messages.DefaultMessagesInfo;
+import jetbrains.buildServer.serverSide.BuildEx;
+import jetbrains.buildServer.serverSide.SBuild;
+import jetbrains.buildServer.serverSide.buildLog.BlockLogMessage;
+import jetbrains.buildServer.serverSide.buildLog.LogMessage;
+import jetbrains.buildServer.serverSide.problems.BuildLogCompileErrorCollector;
+import jetbrains.buildServer.serverSide.problems.BuildProblem;
+import jetbrains.buildServer.util.StringUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import static jetbrains.buildServer.serverSide.impl.problems.types.CompilationErrorTypeDetailsProvider.COMPILE_BLOCK_INDEX;
+
+/**
+ * Texts of the compile errors of a build by the index of their compilation block. The build log is read once
+ * for the compilation blocks reported by the compilation problems of the build, and only up to the last of them.
+ * Blocks missing in the log at that time (the build was running) are collected separately on request and memoized.
+ * At most {@link #MAX_ERRORS_PER_BLOCK} errors cut to {@link #MAX_ERROR_LENGTH} characters are kept per block.
+ */
+public final class CompileErrorIndex {
+  static final int MAX_ERRORS_PER_BLOCK = 100;
+  static final int MAX_ERROR_LENGTH = 4096;
+
+  private final Map<Integer, List<String>> myErrors = new ConcurrentHashMap<>();
+  private volatile boolean myIndexed = false;
+  // true if the log was read after the build finished, so it contains all compilation blocks
+  private volatile boolean myComplete = false;
+
+  @NotNull
+  public List<String> getCompileErrors(@NotNull final SBuild sBuild, final int compileBlockIndex) {
+    if (!myIndexed) {
+      index(sBuild);
+    }
+
+    List<String> errors = myErrors.get(compileBlockIndex);
+    if (errors != null) return errors;
+    if (myComplete) return Collections.emptyList();
+
+    errors = new ArrayList<>();
+    for (LogMessage error : new BuildLogCompileErrorCollector().collectCompileErrors(compileBlockIndex, sBuild)) {
+      if (!addError(errors, error.getText())) break;
+    }
+    errors = Collections.unmodifiableList(errors);
+    myErrors.put(compileBlockIndex, errors);
+    return errors;
+  }
+
+  @Nullable
+  public static Integer getCompileBlockIndex(@NotNull final BuildProblem problem) {
+    if (!BuildProblemTypes.TC_COMPILATION_ERROR_TYPE.equals(problem.getBuildProblemData().getType())) return null;
+
+    final String compilationBlockIndex = problem.getBuildProblemData().getAdditionalData();
+    if (compilationBlockIndex == null) return null;
+
+    try {
+      return Integer.parseInt(
+        StringUtil.stringToProperties(compilationBlockIndex, StringUtil.STD_ESCAPER2).get(COMPILE_BLOCK_INDEX));
+    } catch (Exception e) {
+      return null;
+    }
+  }
+
+  private synchronized void index(@NotNull final SBuild sBuild) {
+    if (myIndexed) return;
+
+    final boolean complete = sBuild.isFinished();
+    final IntHashSet compileBlocks = new IntHashSet();
+    int lastCompileBlock = -1;
+    for (BuildProblem problem : ((BuildEx)sBuild).getBuildProblems()) {
+      final Integer compileBlockIndex = getCompileBlockIndex(problem);
+      if (compileBlockIndex != null) {
+        compileBlocks.add(compileBlockIndex);
+        lastCompileBlock = Math.max(lastCompileBlock, compileBlockIndex);
+      }
+    }
+
+    final Map<Integer, List<String>> errors = new HashMap<>();
+    final Iterator<LogMessage> messages = compileBlocks.isEmpty()
+                                          ? Collections.emptyIterator()
+                                          : sBuild.getBuildLog().getMessagesIterator();
+    while (messages.hasNext()) {
+      final LogMessage message = messages.next();
+      final BlockLogMessage compileBlock = findCompileBlock(message);
+      if (compileBlock == null) {
+        // the messages are ordered, so all the compilation blocks are read once a message after them is met
+        if (message.getIndex() > lastCompileBlock) break;
+        continue;
+      }
+      if (!message.getStatus().isFailed() || !compileBlocks.contains(compileBlock.getIndex())) continue;
+
+      addError(errors.computeIfAbsent(compileBlock.getIndex(), index -> new ArrayList<>()), message.getText());
+    }
+
+    for (Map.Entry<Integer, List<String>> entry : errors.entrySet()) {
+      myErrors.put(entry.getKey(), Collections.unmodifiableList(entry.getValue()));
+    }
+    myComplete = complete;
+    myIndexed = true;
+  }
+
+  /**
+   * @return the nearest enclosing block of the message which is a compilation block.
+   */
+  @Nullable
+  private static BlockLogMessage findCompileBlock(@NotNull final LogMessage message) {
+    for (BlockLogMessage block = message.getParent(); block != null; block = block.getParent()) {
+      if (DefaultMessagesInfo.BLOCK_TYPE_COMPILATION.equals(block.getBlockType())) {
+        return block;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @return false if the errors of the block are not collected any more.
+   */
+  private static boolean addError(@NotNull final List<String> errors, @Nullable final String text) {
+    if (errors.size() >= MAX_ERRORS_PER_BLOCK) return false;
+    if (text == null) return true;
+
+    errors.add(text.length() > MAX_ERROR_LENGTH ? text.substring(0, MAX_ERROR_LENGTH) : text);
+    return true;
+  }
+}
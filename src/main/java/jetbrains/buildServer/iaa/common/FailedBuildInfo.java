@@ -17,42 +17,261 @@
 package jetbrains.buildServer.iaa.common;
 
 import java.util.Collection;
-import java.util.HashSet;
-import java.util.Set;
+import jetbrains.buildServer.iaa.utils.IntHashSet;
 import jetbrains.buildServer.serverSide.SBuild;
 import jetbrains.buildServer.serverSide.STestRun;
 import jetbrains.buildServer.serverSide.problems.BuildProblem;
 import org.jetbrains.annotations.NotNull;
 
+/**
+ * Processing state of a failed build. Only the build id is kept, so the build model objects are not retained
+ * between processing passes: the build is resolved again every time it is processed.
+ * The build is processed by one worker at a time. The processed ids are changed under the lock on this object,
+ * so other threads which save them to the journal take the same lock.
+ */
 public class FailedBuildInfo {
 
-  private final SBuild mySBuild;
+  private final long myBuildId;
+  private final long myFailureTime;
+  private volatile boolean myFinished;
+  private double myPriorityWeight = 1;
 
-  private Set<Integer> processedTests = new HashSet<>();
-  private Set<Integer> processedBuildProblems = new HashSet<>();
+  private IntHashSet processedTests = new IntHashSet();
+  private IntHashSet processedBuildProblems = new IntHashSet();
+  // Ids which were processed after the progress was saved to the journal for the last time
+  private IntHashSet myUnsavedTests = new IntHashSet();
+  private IntHashSet myUnsavedBuildProblems = new IntHashSet();
   public int processed = 0;
+  private int mySavedProcessed = 0;
+  private volatile long myLastProcessedTime = 0;
+  // Applicable items which were left without a responsible user when the time budget ran out.
+  // The sets are replaced as a whole, as the dispatcher checks them from another thread.
+  private volatile IntHashSet myPendingTests = new IntHashSet();
+  private volatile IntHashSet myPendingBuildProblems = new IntHashSet();
+  private int myNextHeuristic = 0;
+  private boolean myPendingWorkSaved = true;
+  // Number of failed tests in the build when its statistics were requested for the last time
+  private int myLastFailedTestCount = -1;
+  private BuildChanges myBuildChanges;
+  private final CompileErrorIndex myCompileErrors = new CompileErrorIndex();
 
   public FailedBuildInfo(final SBuild sBuild) {
-    mySBuild = sBuild;
+    this(sBuild, System.currentTimeMillis());
   }
 
-  @NotNull
-  public SBuild getBuild() {
-    return mySBuild;
+  public FailedBuildInfo(final SBuild sBuild, final long failureTime) {
+    myBuildId = sBuild.getBuildId();
+    myFailureTime = failureTime;
+    myFinished = sBuild.isFinished();
+  }
+
+  public long getBuildId() {
+    return myBuildId;
+  }
+
+  public boolean isFinished() {
+    return myFinished;
+  }
+
+  public void setFinished(final boolean finished) {
+    myFinished = finished;
+  }
+
+  /**
+   * @return time when the plugin found out about the failure.
+   */
+  public long getFailureTime() {
+    return myFailureTime;
   }
 
-  public void addProcessedTestRuns(@NotNull Collection<STestRun> tests) {
+  public double getPriorityWeight() {
+    return myPriorityWeight;
+  }
+
+  public void setPriorityWeight(final double priorityWeight) {
+    myPriorityWeight = priorityWeight;
+  }
+
+  public long getLastProcessedTime() {
+    return myLastProcessedTime;
+  }
+
+  public void setLastProcessedTime(final long lastProcessedTime) {
+    myLastProcessedTime = lastProcessedTime;
+  }
+
+  public synchronized void addProcessedTestRuns(@NotNull Collection<STestRun> tests) {
     for (STestRun testRun : tests) {
-      processedTests.add(testRun.getTestRunId());
+      if (processedTests.add(testRun.getTestRunId())) {
+        myUnsavedTests.add(testRun.getTestRunId());
+      }
     }
   }
 
-  public void addProcessedBuildProblems(@NotNull Collection<BuildProblem> buildProblems) {
+  public synchronized void addProcessedBuildProblems(@NotNull Collection<BuildProblem> buildProblems) {
     for (BuildProblem buildProblem : buildProblems) {
-      processedBuildProblems.add(buildProblem.getId());
+      if (processedBuildProblems.add(buildProblem.getId())) {
+        myUnsavedBuildProblems.add(buildProblem.getId());
+      }
+    }
+  }
+
+  /**
+   * Restores the progress which was made before the server restart.
+   */
+  public synchronized void restoreProgress(@NotNull IntHashSet testRunIds,
+                              @NotNull IntHashSet buildProblemIds,
+                              final int processedCount) {
+    testRunIds.forEach(testRunId -> {
+      if (processedTests.add(testRunId)) {
+        myUnsavedTests.add(testRunId);
+      }
+    });
+    buildProblemIds.forEach(buildProblemId -> {
+      if (processedBuildProblems.add(buildProblemId)) {
+        myUnsavedBuildProblems.add(buildProblemId);
+      }
+    });
+    processed = processedCount;
+  }
+
+  @NotNull
+  public IntHashSet getProcessedTestRuns() {
+    return processedTests;
+  }
+
+  @NotNull
+  public IntHashSet getProcessedBuildProblems() {
+    return processedBuildProblems;
+  }
+
+  @NotNull
+  public IntHashSet getUnsavedTestRuns() {
+    return myUnsavedTests;
+  }
+
+  @NotNull
+  public IntHashSet getUnsavedBuildProblems() {
+    return myUnsavedBuildProblems;
+  }
+
+  public boolean isProcessedCountSaved() {
+    return mySavedProcessed == processed;
+  }
+
+  public synchronized void markProgressSaved() {
+    mySavedProcessed = processed;
+    myPendingWorkSaved = true;
+    if (!myUnsavedTests.isEmpty()) {
+      myUnsavedTests = new IntHashSet();
+    }
+    if (!myUnsavedBuildProblems.isEmpty()) {
+      myUnsavedBuildProblems = new IntHashSet();
     }
   }
 
+  /**
+   * Remembers the items which should be passed to the heuristics starting from the given one in the next cycle.
+   */
+  public synchronized void setPendingWork(@NotNull Collection<BuildProblem> buildProblems,
+                                          @NotNull Collection<STestRun> testRuns,
+                                          final int nextHeuristic) {
+    final IntHashSet pendingBuildProblems = new IntHashSet(buildProblems.size());
+    for (BuildProblem buildProblem : buildProblems) {
+      pendingBuildProblems.add(buildProblem.getId());
+    }
+    final IntHashSet pendingTests = new IntHashSet(testRuns.size());
+    for (STestRun testRun : testRuns) {
+      pendingTests.add(testRun.getTestRunId());
+    }
+    myPendingBuildProblems = pendingBuildProblems;
+    myPendingTests = pendingTests;
+    myNextHeuristic = nextHeuristic;
+    myPendingWorkSaved = false;
+  }
+
+  /**
+   * Restores the pending items which were saved before the server restart.
+   */
+  public synchronized void restorePendingWork(@NotNull IntHashSet testRunIds,
+                                              @NotNull IntHashSet buildProblemIds,
+                                              final int nextHeuristic) {
+    myPendingTests = testRunIds;
+    myPendingBuildProblems = buildProblemIds;
+    myNextHeuristic = nextHeuristic;
+    myPendingWorkSaved = false;
+  }
+
+  public synchronized void clearPendingWork() {
+    if (hasPendingWork()) {
+      myPendingTests = new IntHashSet();
+      myPendingBuildProblems = new IntHashSet();
+      myPendingWorkSaved = false;
+    }
+    myNextHeuristic = 0;
+  }
+
+  @NotNull
+  public IntHashSet getPendingTestRuns() {
+    return myPendingTests;
+  }
+
+  @NotNull
+  public IntHashSet getPendingBuildProblems() {
+    return myPendingBuildProblems;
+  }
+
+  /**
+   * @return false if the pending items were changed after the progress was saved to the journal for the last time.
+   */
+  public boolean isPendingWorkSaved() {
+    return myPendingWorkSaved;
+  }
+
+  public boolean hasPendingWork() {
+    return !myPendingTests.isEmpty() || !myPendingBuildProblems.isEmpty();
+  }
+
+  public int getNextHeuristic() {
+    return myNextHeuristic;
+  }
+
+  public boolean isPending(STestRun sTestRun) {
+    return myPendingTests.contains(sTestRun.getTestRunId());
+  }
+
+  public boolean isPending(BuildProblem buildProblem) {
+    return myPendingBuildProblems.contains(buildProblem.getId());
+  }
+
+  /**
+   * @return changes of the build shared by all heuristics and processing cycles.
+   * The cache is used to share the changes with other builds, it is taken on the first call.
+   */
+  @NotNull
+  public synchronized BuildChanges getBuildChanges(@NotNull final ChangeSetCache changeSetCache) {
+    if (myBuildChanges == null) {
+      myBuildChanges = new BuildChanges(changeSetCache);
+    }
+    return myBuildChanges;
+  }
+
+  /**
+   * @return compile errors of the build shared by all heuristics and processing cycles.
+   */
+  @NotNull
+  public CompileErrorIndex getCompileErrors() {
+    return myCompileErrors;
+  }
+
+  public int getLastFailedTestCount() {
+    return myLastFailedTestCount;
+  }
+
+  public void setLastFailedTestCount(final int lastFailedTestCount) {
+    myLastFailedTestCount = lastFailedTestCount;
+  }
+
   public boolean checkNotProcessed(STestRun sTestRun) {
     return !processedTests.contains(sTestRun.getTestRunId());
   }
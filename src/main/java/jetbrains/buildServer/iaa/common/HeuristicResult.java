@@ -16,19 +16,23 @@
 
 package jetbrains.buildServer.iaa.common;
 
-import java.util.HashMap;
+import jetbrains.buildServer.iaa.utils.IntObjectHashMap;
 import jetbrains.buildServer.serverSide.STestRun;
 import jetbrains.buildServer.serverSide.problems.BuildProblem;
 import org.jetbrains.annotations.Nullable;
 
+/**
+ * Responsibilities found for test runs and build problems, by their ids. Heuristics are expected to share
+ * one responsibility instance between the items with the same user and reason.
+ */
 public class HeuristicResult {
 
-  private HashMap<Integer, Responsibility> testRun2Responsibility;
-  private HashMap<Integer, Responsibility> buildProblem2Responsibility;
+  private final IntObjectHashMap<Responsibility> testRun2Responsibility;
+  private final IntObjectHashMap<Responsibility> buildProblem2Responsibility;
 
   public HeuristicResult() {
-    testRun2Responsibility = new HashMap<>();
-    buildProblem2Responsibility = new HashMap<>();
+    testRun2Responsibility = new IntObjectHashMap<>();
+    buildProblem2Responsibility = new IntObjectHashMap<>();
   }
 
   public void addResponsibility(final STestRun sTestRun, final Responsibility responsibility) {
@@ -17,9 +17,9 @@
 package jetbrains.buildServer.iaa.heuristics;
 
 import com.intellij.openapi.diagnostic.Logger;
-import java.io.File;
 import java.util.*;
-import java.util.stream.Collectors;
+import jetbrains.buildServer.iaa.common.BuildChanges.Modification;
+import jetbrains.buildServer.iaa.common.ChangedFilesMatcher;
 import jetbrains.buildServer.iaa.processing.HeuristicContext;
 import jetbrains.buildServer.iaa.common.HeuristicResult;
 import jetbrains.buildServer.iaa.common.Responsibility;
@@ -28,15 +28,9 @@ import jetbrains.buildServer.iaa.utils.ProblemTextExtractor;
 import jetbrains.buildServer.serverSide.*;
 import jetbrains.buildServer.serverSide.problems.BuildProblem;
 import jetbrains.buildServer.users.SUser;
-import jetbrains.buildServer.util.FileUtil;
-import jetbrains.buildServer.vcs.SVcsModification;
-import jetbrains.buildServer.vcs.SelectPrevBuildPolicy;
-import jetbrains.buildServer.vcs.VcsFileModification;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import static com.intellij.openapi.util.text.StringUtil.join;
-
 public class BrokenFileHeuristic implements Heuristic {
 
   private static final Logger LOGGER = Logger.getInstance(BrokenFileHeuristic.class.getName());
@@ -59,29 +53,39 @@ public class BrokenFileHeuristic implements Heuristic {
            "who changed the suspicious file. The suspicious file is the one that probably caused this failure.";
   }
 
+  @Override
+  public long getEstimatedCostInMillis() {
+    return 500;
+  }
+
+  @Override
+  public boolean isApplicable(@NotNull final HeuristicContext heuristicContext) {
+    final List<Modification> modifications = heuristicContext.getLoadedModifications();
+    return modifications == null || !modifications.isEmpty();
+  }
+
   public HeuristicResult findResponsibleUser(@NotNull HeuristicContext heuristicContext) {
     HeuristicResult result = new HeuristicResult();
     SBuild sBuild = heuristicContext.getBuild();
+    List<Modification> vcsChanges = heuristicContext.getModifications();
+    if (vcsChanges.isEmpty()) return result;
 
-    final BuildPromotion buildPromotion = sBuild.getBuildPromotion();
-    if (!(buildPromotion instanceof BuildPromotionEx)) return result;
-
-    SelectPrevBuildPolicy prevBuildPolicy = SelectPrevBuildPolicy.SINCE_LAST_BUILD;
-    List<SVcsModification> vcsChanges = ((BuildPromotionEx)buildPromotion).getDetectedChanges(prevBuildPolicy, true)
-                                                                          .stream()
-                                                                          .map(ChangeDescriptor::getRelatedVcsChange)
-                                                                          .filter(Objects::nonNull)
-                                                                          .collect(Collectors.toList());
+    ChangedFilesMatcher changedFilesMatcher = heuristicContext.getChangedFilesMatcher();
+    // broken file -> responsibility, so the items broken by the same file share one instance
+    Map<String, Responsibility> responsibilities = new HashMap<>();
     for (STestRun sTestRun : heuristicContext.getTestRuns()) {
       String problemText = myProblemTextExtractor.getBuildProblemText(sTestRun);
-      Responsibility responsibility = findResponsibleUser(vcsChanges, sBuild, problemText);
+      Responsibility responsibility =
+        findResponsibleUser(vcsChanges, changedFilesMatcher, sBuild, problemText, responsibilities);
       if (responsibility != null)
         result.addResponsibility(sTestRun, responsibility);
     }
 
     for (BuildProblem buildProblem : heuristicContext.getBuildProblems()) {
-      String problemText = myProblemTextExtractor.getBuildProblemText(buildProblem, sBuild);
-      Responsibility responsibility = findResponsibleUser(vcsChanges, sBuild, problemText);
+      String problemText =
+        myProblemTextExtractor.getBuildProblemText(buildProblem, sBuild, heuristicContext.getCompileErrors());
+      Responsibility responsibility =
+        findResponsibleUser(vcsChanges, changedFilesMatcher, sBuild, problemText, responsibilities);
       if (responsibility != null)
         result.addResponsibility(buildProblem, responsibility);
     }
@@ -90,13 +94,19 @@ public class BrokenFileHeuristic implements Heuristic {
   }
 
   @Nullable
-  private Responsibility findResponsibleUser(List<SVcsModification> vcsChanges, SBuild sBuild, String problemText) {
+  private Responsibility findResponsibleUser(List<Modification> vcsChanges,
+                                             ChangedFilesMatcher changedFilesMatcher,
+                                             SBuild sBuild,
+                                             String problemText,
+                                             Map<String, Responsibility> responsibilities) {
+    final int[] mentionedFiles = changedFilesMatcher.findFirstMentionedFiles(problemText);
     SUser responsibleUser = null;
     String brokenFile = null;
-    for (SVcsModification vcsChange : vcsChanges) {
-      final String foundBrokenFile = findBrokenFile(vcsChange, problemText);
-      if (foundBrokenFile == null) continue;
+    for (int i = 0; i < vcsChanges.size(); i++) {
+      if (mentionedFiles[i] == -1) continue;
 
+      final Modification vcsChange = vcsChanges.get(i);
+      final String foundBrokenFile = vcsChange.getFilePaths().get(mentionedFiles[i]);
       final Collection<SUser> changeCommitters = vcsChange.getCommitters();
       if (changeCommitters.size() != 1) return null;
 
@@ -112,52 +122,13 @@ public class BrokenFileHeuristic implements Heuristic {
 
     if (responsibleUser == null) return null;
 
-    return new Responsibility(responsibleUser, String.format("%s you changed the \"%s\" file, which probably caused" +
-                                                             " this failure.", Constants.REASON_PREFIX, brokenFile));
-  }
-
-  @Nullable
-  private static String findBrokenFile(@NotNull final SVcsModification vcsChange, @NotNull final String problemText) {
-    for (VcsFileModification modification : vcsChange.getChanges()) {
-      final String filePath = modification.getRelativeFileName();
-      for (String pattern : getPatterns(filePath)) {
-        if (problemText.contains(pattern)) {
-          return filePath;
-        }
-      }
-    }
-    return null;
-  }
-
-  /**
-   * This method is required to separate path1/path2/fileName with path3/path4/fileName.
-   * Also it allows to handle different separators. Currently supported: '.','/','\' separators.
-   * @param filePath - filePath of the modification
-   * @return various combination of fileName and its parents(up to 2th level) with separators.
-   */
-  @NotNull
-  private static List<String> getPatterns(@NotNull final String filePath) {
-    final List<String> parts = new ArrayList<>();
-    parts.add(FileUtil.getNameWithoutExtension(new File(filePath)));
-
-    String path = getParentPath(filePath);
-    if (path != null) {
-      parts.add(0, new File(path).getName());
-      path = getParentPath(path);
-      if (path != null) {
-        parts.add(0, new File(path).getName());
-      }
-    }
+    final Responsibility responsibility = responsibilities.get(brokenFile);
+    if (responsibility != null && responsibility.getUser().equals(responsibleUser)) return responsibility;
 
-    return Arrays.asList(join(parts, "."), join(parts, "/"), join(parts, "\\"));
-  }
-
-  // we do not use File#getParentFile() instead because we must not take current
-  // working directory into account, i.e. getParentPath("abc") must return null
-  @Nullable
-  private static String getParentPath(@NotNull final String path) {
-    final int lastSlashPos = path.replace('\\', '/').lastIndexOf('/');
-    return lastSlashPos == -1 ? null : path.substring(0, lastSlashPos);
+    final Responsibility created =
+      new Responsibility(responsibleUser, String.format("%s you changed the \"%s\" file, which probably caused" +
+                                                        " this failure.", Constants.REASON_PREFIX, brokenFile));
+    responsibilities.put(brokenFile, created);
+    return created;
   }
 }
-
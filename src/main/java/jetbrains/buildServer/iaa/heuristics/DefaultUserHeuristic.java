@@ -27,6 +27,7 @@ import jetbrains.buildServer.serverSide.SBuildFeatureDescriptor;
 import jetbrains.buildServer.users.UserModelEx;
 import jetbrains.buildServer.users.impl.UserEx;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 public class DefaultUserHeuristic implements Heuristic {
 
@@ -50,18 +51,24 @@ public class DefaultUserHeuristic implements Heuristic {
     return "Assign an investigation to the default responsible user.";
   }
 
+  @Override
+  public long getEstimatedCostInMillis() {
+    return 1;
+  }
+
+  @Override
+  public boolean isApplicable(@NotNull final HeuristicContext heuristicContext) {
+    return getDefaultResponsible(heuristicContext.getBuild()) != null;
+  }
+
   @Override
   public HeuristicResult findResponsibleUser(@NotNull HeuristicContext heuristicContext) {
     HeuristicResult result = new HeuristicResult();
 
     SBuild build = heuristicContext.getBuild();
-    Collection<SBuildFeatureDescriptor> descriptors = build.getBuildFeaturesOfType(Constants.BUILD_FEATURE_TYPE);
-    if (descriptors.isEmpty()) return result;
-
-    final SBuildFeatureDescriptor sBuildFeature = (SBuildFeatureDescriptor)descriptors.toArray()[0];
-    String defaultResponsible = String.valueOf(sBuildFeature.getParameters().get(Constants.DEFAULT_RESPONSIBLE));
+    String defaultResponsible = getDefaultResponsible(build);
+    if (defaultResponsible == null) return result;
 
-    if (defaultResponsible == null || defaultResponsible.isEmpty()) return result;
     UserEx responsibleUser = myUserModel.findUserAccount(null, defaultResponsible);
 
     if (responsibleUser == null) {
@@ -79,4 +86,13 @@ public class DefaultUserHeuristic implements Heuristic {
 
     return result;
   }
+
+  @Nullable
+  private static String getDefaultResponsible(@NotNull final SBuild build) {
+    Collection<SBuildFeatureDescriptor> descriptors = build.getBuildFeaturesOfType(Constants.BUILD_FEATURE_TYPE);
+    if (descriptors.isEmpty()) return null;
+
+    String defaultResponsible = descriptors.iterator().next().getParameters().get(Constants.DEFAULT_RESPONSIBLE);
+    return defaultResponsible == null || defaultResponsible.isEmpty() ? null : defaultResponsible;
+  }
 }
@@ -38,6 +38,21 @@ public interface Heuristic {
   @NotNull
   String getDescription();
 
+  /**
+   * @return rough run time of the heuristic in milliseconds. It is used to plan the run until the actual run time is known.
+   */
+  default long getEstimatedCostInMillis() {
+    return 0;
+  }
+
+  /**
+   * @return false if the heuristic can't resolve any item of the context, e.g. there are no committers.
+   * The check must not load anything from the build, e.g. it may use only the changes which are already loaded.
+   */
+  default boolean isApplicable(@NotNull HeuristicContext heuristicContext) {
+    return true;
+  }
+
   /**
    * Try to detect which person is probably responsible.
    * @param heuristicContext {@link HeuristicContext} object which presents known information about the problem.
@@ -24,7 +24,6 @@ import jetbrains.buildServer.iaa.common.Responsibility;
 import jetbrains.buildServer.iaa.processing.HeuristicContext;
 import jetbrains.buildServer.serverSide.SBuild;
 import jetbrains.buildServer.users.SUser;
-import jetbrains.buildServer.vcs.SelectPrevBuildPolicy;
 import org.jetbrains.annotations.NotNull;
 
 public class OneCommitterHeuristic implements Heuristic {
@@ -42,13 +41,23 @@ public class OneCommitterHeuristic implements Heuristic {
     return "Assign an investigation to a user if the user is the only committer.";
   }
 
+  @Override
+  public long getEstimatedCostInMillis() {
+    return 10;
+  }
+
+  @Override
+  public boolean isApplicable(@NotNull final HeuristicContext heuristicContext) {
+    final Set<SUser> committers = heuristicContext.getLoadedCommitters();
+    return committers == null || committers.size() == 1;
+  }
+
   @Override
   public HeuristicResult findResponsibleUser(@NotNull HeuristicContext heuristicContext) {
     HeuristicResult result = new HeuristicResult();
 
     SBuild build = heuristicContext.getBuild();
-    final SelectPrevBuildPolicy selectPrevBuildPolicy = SelectPrevBuildPolicy.SINCE_LAST_BUILD;
-    final Set<SUser> committers = build.getCommitters(selectPrevBuildPolicy).getUsers();
+    final Set<SUser> committers = heuristicContext.getCommitters();
     if (committers.isEmpty()) {
       LOGGER.debug("There are no committers since last build for failed build #" + build.getBuildId());
       return result;
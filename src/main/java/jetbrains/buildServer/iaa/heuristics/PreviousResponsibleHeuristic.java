@@ -17,6 +17,7 @@
 package jetbrains.buildServer.iaa.heuristics;
 
 import java.util.HashMap;
+import java.util.Map;
 import jetbrains.buildServer.iaa.common.Constants;
 import jetbrains.buildServer.iaa.common.HeuristicResult;
 import jetbrains.buildServer.iaa.common.Responsibility;
@@ -50,6 +51,11 @@ public class PreviousResponsibleHeuristic implements Heuristic {
     return "Assign an investigation to a user if the user was responsible previous time.";
   }
 
+  @Override
+  public long getEstimatedCostInMillis() {
+    return 1000;
+  }
+
   public HeuristicResult findResponsibleUser(@NotNull HeuristicContext heuristicContext) {
     HeuristicResult result = new HeuristicResult();
     SBuild sBuild = heuristicContext.getBuild();
@@ -74,15 +80,26 @@ public class PreviousResponsibleHeuristic implements Heuristic {
       }
     }
 
+    Map<Integer, User> problemId2Responsible =
+      myInvestigationsManager.findPreviousResponsible(sProject, sBuild, heuristicContext.getBuildProblems());
+    // problems of the same type with the same user share one responsibility
+    Map<User, Map<String, Responsibility>> responsibilities = new HashMap<>();
     for (BuildProblem buildProblem : heuristicContext.getBuildProblems()) {
-      User responsibleUser = myInvestigationsManager.findPreviousResponsible(sProject, sBuild, buildProblem);
+      User responsibleUser = problemId2Responsible.get(buildProblem.getId());
       if (responsibleUser != null) {
         String buildProblemType = buildProblem.getBuildProblemData().getType();
-        String description =
-          String.format("%s you were responsible for the build problem: `%s` in build `%s` previous time",
-                        Constants.REASON_PREFIX, buildProblemType, sBuild.getFullName());
-
-        result.addResponsibility(buildProblem, new Responsibility(responsibleUser, description));
+        Map<String, Responsibility> userResponsibilities =
+          responsibilities.computeIfAbsent(responsibleUser, user -> new HashMap<>());
+        Responsibility responsibility = userResponsibilities.get(buildProblemType);
+        if (responsibility == null) {
+          String description =
+            String.format("%s you were responsible for the build problem: `%s` in build `%s` previous time",
+                          Constants.REASON_PREFIX, buildProblemType, sBuild.getFullName());
+          responsibility = new Responsibility(responsibleUser, description);
+          userResponsibilities.put(buildProblemType, responsibility);
+        }
+
+        result.addResponsibility(buildProblem, responsibility);
       }
     }
 
@@ -18,13 +18,16 @@ package jetbrains.buildServer.iaa.processing;
 
 import com.intellij.openapi.diagnostic.Logger;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 import jetbrains.buildServer.iaa.common.Constants;
 import jetbrains.buildServer.iaa.common.FailedBuildInfo;
 import jetbrains.buildServer.iaa.utils.BuildProblemUtils;
 import jetbrains.buildServer.iaa.utils.CustomParameters;
+import jetbrains.buildServer.iaa.utils.IntHashSet;
 import jetbrains.buildServer.iaa.utils.InvestigationsManager;
 import jetbrains.buildServer.serverSide.SBuild;
 import jetbrains.buildServer.serverSide.SProject;
@@ -49,14 +52,17 @@ class BuildProblemsFilter {
   }
 
   List<BuildProblem> apply(final FailedBuildInfo failedBuildInfo,
+                           final SBuild sBuild,
                            final SProject sProject,
                            final List<BuildProblem> buildProblems) {
-    SBuild sBuild = failedBuildInfo.getBuild();
     Integer threshold = CustomParameters.getMaxTestsPerBuildThreshold(sBuild);
+    // problems of the previous builds are loaded once per pass
+    Map<Long, IntHashSet> previousProblems = new HashMap<>();
 
     List<BuildProblem> filteredBuildProblems = buildProblems.stream()
                                                             .filter(failedBuildInfo::checkNotProcessed)
-                                                            .filter(problem -> isApplicable(sProject, sBuild, problem))
+                                                            .filter(problem -> isApplicable(sProject, sBuild, problem,
+                                                                                            previousProblems))
                                                             .limit(threshold - failedBuildInfo.processed)
                                                             .collect(Collectors.toList());
 
@@ -68,11 +74,12 @@ class BuildProblemsFilter {
 
   private boolean isApplicable(@NotNull final SProject project,
                                @NotNull final SBuild sBuild,
-                               @NotNull final BuildProblem problem) {
+                               @NotNull final BuildProblem problem,
+                               @NotNull final Map<Long, IntHashSet> previousProblems) {
     String reason = null;
     if (problem.isMuted()) {
       reason = "is muted";
-    } else if (!myBuildProblemUtils.isNew(problem)) {
+    } else if (!myBuildProblemUtils.isNew(problem, previousProblems)) {
       reason = "occurs not for the first time";
     } else if (!supportedTypes.contains(problem.getBuildProblemData().getType())) {
       reason = String.format("has an unsupported type %s. Supported types: %s",
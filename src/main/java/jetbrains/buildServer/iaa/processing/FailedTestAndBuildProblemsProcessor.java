@@ -17,10 +17,14 @@
 package jetbrains.buildServer.iaa.processing;
 
 import com.intellij.openapi.diagnostic.Logger;
+import java.util.Collections;
 import java.util.List;
+import java.util.stream.Collectors;
 import jetbrains.buildServer.iaa.common.FailedBuildInfo;
 import jetbrains.buildServer.iaa.common.HeuristicResult;
+import jetbrains.buildServer.iaa.utils.AutoAssignerMetrics;
 import jetbrains.buildServer.iaa.utils.CustomParameters;
+import jetbrains.buildServer.iaa.utils.TimeBudget;
 import jetbrains.buildServer.serverSide.*;
 import jetbrains.buildServer.serverSide.problems.BuildProblem;
 import org.jetbrains.annotations.NotNull;
@@ -33,22 +37,30 @@ public class FailedTestAndBuildProblemsProcessor {
   private final FailedTestAssigner myFailedTestAssigner;
   private final BuildProblemsAssigner myBuildProblemsAssigner;
   @NotNull private ResponsibleUserFinder myResponsibleUserFinder;
+  @NotNull private final AutoAssignerMetrics myMetrics;
 
 
   public FailedTestAndBuildProblemsProcessor(@NotNull final ResponsibleUserFinder responsibleUserFinder,
                                              @NotNull final FailedTestFilter failedTestFilter,
                                              @NotNull final FailedTestAssigner failedTestAssigner,
                                              @NotNull final BuildProblemsFilter buildProblemsFilter,
-                                             @NotNull final BuildProblemsAssigner buildProblemsAssigner) {
+                                             @NotNull final BuildProblemsAssigner buildProblemsAssigner,
+                                             @NotNull final AutoAssignerMetrics metrics) {
     myResponsibleUserFinder = responsibleUserFinder;
     myFailedTestFilter = failedTestFilter;
     myFailedTestAssigner = failedTestAssigner;
     myBuildProblemsFilter = buildProblemsFilter;
     myBuildProblemsAssigner = buildProblemsAssigner;
+    myMetrics = metrics;
   }
 
-  public void processBuild(final FailedBuildInfo failedBuildInfo) {
-    SBuild sBuild = failedBuildInfo.getBuild();
+  /**
+   * Processes the build within the given cycle budget and the budget of a single build. When any of them is exceeded,
+   * the processing stops after the filtering or after the current heuristic and is resumed in the next cycle.
+   */
+  public void processBuild(@NotNull final FailedBuildInfo failedBuildInfo,
+                           @NotNull final SBuild sBuild,
+                           @NotNull final TimeBudget cycleBudget) {
     SBuildType sBuildType = sBuild.getBuildType();
     if (sBuildType == null) {
       LOGGER.warn("Build #" + sBuild.getBuildId() + " doesn't have a build type.");
@@ -58,29 +70,111 @@ public class FailedTestAndBuildProblemsProcessor {
 
     SProject sProject = sBuildType.getProject();
     Integer threshold = CustomParameters.getMaxTestsPerBuildThreshold(sBuild);
-    if (failedBuildInfo.processed >= threshold) {
+    if (failedBuildInfo.processed >= threshold && !failedBuildInfo.hasPendingWork()) {
       LOGGER.debug("Stop processing build #" + sBuild.getBuildId() + " as the threshold was exceeded.");
       return;
     }
 
+    TimeBudget budget = cycleBudget.limit(CustomParameters.getBuildTimeBudgetInMillis());
     List<BuildProblem> allBuildProblems = ((BuildEx)sBuild).getBuildProblems();
-    List<STestRun> allFailedTests = requestBrokenTestsWithStats(sBuild);
+    // the statistics are the most expensive part of a pass, so they are skipped while no tests fail anew
+    final int failedTestCount = sBuild.getShortStatistics().getFailedTestCount();
+    final boolean shouldRequestTests =
+      failedTestCount != failedBuildInfo.getLastFailedTestCount() || failedBuildInfo.hasPendingWork();
+    List<STestRun> allFailedTests;
+    if (shouldRequestTests) {
+      allFailedTests = requestBrokenTestsWithStats(sBuild);
+    } else {
+      myMetrics.increment(AutoAssignerMetrics.SKIPPED_STATISTICS);
+      allFailedTests = Collections.emptyList();
+    }
 
     LOGGER.debug("Build #" + sBuild.getBuildId() + ": has " + allBuildProblems.size() +
                  " build problems and " + allFailedTests.size() + " failed tests.");
 
-    List<BuildProblem> applicableBuildProblems =
-      myBuildProblemsFilter.apply(failedBuildInfo, sProject, allBuildProblems);
-    List<STestRun> applicableFailedTests = myFailedTestFilter.apply(failedBuildInfo, sProject, allFailedTests);
+    if (failedBuildInfo.hasPendingWork()) {
+      List<BuildProblem> pendingBuildProblems =
+        allBuildProblems.stream().filter(failedBuildInfo::isPending).collect(Collectors.toList());
+      List<STestRun> pendingFailedTests =
+        allFailedTests.stream().filter(failedBuildInfo::isPending).collect(Collectors.toList());
+
+      LOGGER.debug("Build #" + sBuild.getBuildId() + ": resuming " + pendingBuildProblems.size() +
+                   " build problems and " + pendingFailedTests.size() + " failed tests.");
+      findAndAssign(failedBuildInfo, sBuild, sProject, pendingBuildProblems, pendingFailedTests, budget);
+      if (failedBuildInfo.hasPendingWork()) {
+        onBudgetExceeded(sBuild, cycleBudget);
+        return;
+      }
+
+      if (failedBuildInfo.processed >= threshold) {
+        return;
+      }
+    }
 
-    LOGGER.debug("Build #" + sBuild.getBuildId() + ": found " + applicableBuildProblems.size() +
-                 " applicable build problems and " + applicableFailedTests.size() + " applicable failed tests.");
+    List<BuildProblem> applicableBuildProblems =
+      myBuildProblemsFilter.apply(failedBuildInfo, sBuild, sProject, allBuildProblems);
+
+    // failed tests go through the filters, the heuristics and the assigners chunk by chunk, so the first
+    // investigations are assigned early and the intermediate lists don't grow with the number of failures
+    final int chunkSize = CustomParameters.getFailedTestsChunkSize();
+    int from = 0;
+    do {
+      final int to = Math.min(from + chunkSize, allFailedTests.size());
+      List<STestRun> applicableFailedTests =
+        myFailedTestFilter.apply(failedBuildInfo, sBuild, sProject, allFailedTests.subList(from, to));
+      from = to;
+
+      LOGGER.debug("Build #" + sBuild.getBuildId() + ": found " + applicableBuildProblems.size() +
+                   " applicable build problems and " + applicableFailedTests.size() + " applicable failed tests.");
+
+      if (budget.isExceeded() && !(applicableBuildProblems.isEmpty() && applicableFailedTests.isEmpty())) {
+        failedBuildInfo.setPendingWork(applicableBuildProblems, applicableFailedTests, 0);
+        onBudgetExceeded(sBuild, cycleBudget);
+        return;
+      }
+
+      findAndAssign(failedBuildInfo, sBuild, sProject, applicableBuildProblems, applicableFailedTests, budget);
+      applicableBuildProblems = Collections.emptyList();
+      if (failedBuildInfo.hasPendingWork()) {
+        onBudgetExceeded(sBuild, cycleBudget);
+        return;
+      }
+
+      if (failedBuildInfo.processed >= threshold) {
+        break;
+      }
+
+      if (from < allFailedTests.size() && budget.isExceeded()) {
+        // the rest of the tests is not marked as processed, so it is requested again in the next cycle
+        onBudgetExceeded(sBuild, cycleBudget);
+        return;
+      }
+    } while (from < allFailedTests.size());
+
+    if (shouldRequestTests) {
+      failedBuildInfo.setLastFailedTestCount(failedTestCount);
+    }
+  }
 
-    HeuristicResult heuristicsResult =
-      myResponsibleUserFinder.findResponsibleUser(sBuild, sProject, applicableBuildProblems, applicableFailedTests);
+  private void findAndAssign(@NotNull final FailedBuildInfo failedBuildInfo,
+                             @NotNull final SBuild sBuild,
+                             @NotNull final SProject sProject,
+                             @NotNull final List<BuildProblem> buildProblems,
+                             @NotNull final List<STestRun> failedTests,
+                             @NotNull final TimeBudget budget) {
+    HeuristicResult heuristicsResult = myResponsibleUserFinder.findResponsibleUser(
+      failedBuildInfo, sBuild, sProject, buildProblems, failedTests, budget);
+
+    myFailedTestAssigner.assign(heuristicsResult, sProject, failedTests);
+    myBuildProblemsAssigner.assign(heuristicsResult, sProject, buildProblems);
+  }
 
-    myFailedTestAssigner.assign(heuristicsResult, sProject, applicableFailedTests);
-    myBuildProblemsAssigner.assign(heuristicsResult, sProject, applicableBuildProblems);
+  private void onBudgetExceeded(@NotNull final SBuild sBuild, @NotNull final TimeBudget cycleBudget) {
+    boolean cycleBudgetExceeded = cycleBudget.isExceeded();
+    myMetrics.increment(cycleBudgetExceeded ? AutoAssignerMetrics.CYCLE_BUDGET_EXCEEDED
+                                            : AutoAssignerMetrics.BUILD_BUDGET_EXCEEDED);
+    LOGGER.debug("Processing of build #" + sBuild.getBuildId() + " is postponed till the next cycle as the " +
+                 (cycleBudgetExceeded ? "cycle" : "build") + " time budget is exceeded.");
   }
 
   private List<STestRun> requestBrokenTestsWithStats(final SBuild build) {
@@ -17,8 +17,9 @@
 package jetbrains.buildServer.iaa.processing;
 
 import com.intellij.openapi.diagnostic.Logger;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
-import java.util.stream.Collectors;
 import jetbrains.buildServer.iaa.common.FailedBuildInfo;
 import jetbrains.buildServer.iaa.utils.CustomParameters;
 import jetbrains.buildServer.iaa.utils.FlakyTestDetector;
@@ -28,6 +29,7 @@ import jetbrains.buildServer.serverSide.SProject;
 import jetbrains.buildServer.serverSide.STest;
 import jetbrains.buildServer.serverSide.STestRun;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.springframework.stereotype.Component;
 
 @Component
@@ -43,15 +45,32 @@ class FailedTestFilter {
     myInvestigationsManager = investigationsManager;
   }
 
-  List<STestRun> apply(final FailedBuildInfo failedBuildInfo, final SProject sProject, final List<STestRun> testRuns) {
-    SBuild sBuild = failedBuildInfo.getBuild();
+  List<STestRun> apply(final FailedBuildInfo failedBuildInfo,
+                       final SBuild sBuild,
+                       final SProject sProject,
+                       final List<STestRun> testRuns) {
     Integer threshold = CustomParameters.getMaxTestsPerBuildThreshold(sBuild);
+    Iterator<STestRun> candidates = testRuns.stream()
+                                            .filter(failedBuildInfo::checkNotProcessed)
+                                            .filter(testRun -> isApplicable(sProject, sBuild, testRun))
+                                            .iterator();
 
-    List<STestRun> filteredTestRuns = testRuns.stream()
-                                              .filter(failedBuildInfo::checkNotProcessed)
-                                              .filter(testRun -> isApplicable(sProject, sBuild, testRun))
-                                              .limit(threshold - failedBuildInfo.processed)
-                                              .collect(Collectors.toList());
+    // the flags are fetched for as many tests as may still be assigned, more tests are taken only if some are flaky
+    List<STestRun> filteredTestRuns = new ArrayList<>();
+    int remaining = threshold - failedBuildInfo.processed;
+    while (remaining > 0 && candidates.hasNext()) {
+      List<STestRun> batch = new ArrayList<>();
+      while (batch.size() < remaining && candidates.hasNext()) {
+        batch.add(candidates.next());
+      }
+      myFlakyTestDetector.prefetch(batch.stream().mapToLong(testRun -> testRun.getTest().getTestNameId()).toArray());
+      for (STestRun testRun : batch) {
+        if (isNotFlaky(sBuild, testRun)) {
+          filteredTestRuns.add(testRun);
+          remaining--;
+        }
+      }
+    }
 
     failedBuildInfo.addProcessedTestRuns(testRuns);
     failedBuildInfo.processed += filteredTestRuns.size();
@@ -73,10 +92,26 @@ class FailedTestFilter {
       reason = "occurs not for the first time";
     } else if (myInvestigationsManager.checkUnderInvestigation(project, sBuild, test)) {
       reason = "is already under an investigation";
-    } else if (myFlakyTestDetector.isFlaky(test.getTestNameId())) {
-      reason = "is marked as flaky";
     }
 
+    if (reason == null) {
+      // the test is reported as applicable once it is checked to be not flaky
+      return true;
+    }
+    return logApplicability(sBuild, testRun, reason);
+  }
+
+  /**
+   * Checked after the other conditions, so the flags are fetched only for the tests which may be assigned.
+   */
+  private boolean isNotFlaky(@NotNull final SBuild sBuild, @NotNull final STestRun testRun) {
+    final String reason = myFlakyTestDetector.isFlaky(testRun.getTest().getTestNameId()) ? "is marked as flaky" : null;
+    return logApplicability(sBuild, testRun, reason);
+  }
+
+  private static boolean logApplicability(@NotNull final SBuild sBuild,
+                                          @NotNull final STestRun testRun,
+                                          @Nullable final String reason) {
     boolean isApplicable = reason == null;
     if (LOGGER.isDebugEnabled()) {
       LOGGER.debug(String.format("Test problem %s:%s is %s.%s",
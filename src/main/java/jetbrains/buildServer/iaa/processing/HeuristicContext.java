@@ -17,26 +17,47 @@
 package jetbrains.buildServer.iaa.processing;
 
 import java.util.List;
+import java.util.Set;
+import jetbrains.buildServer.iaa.common.BuildChanges;
+import jetbrains.buildServer.iaa.common.ChangedFilesMatcher;
+import jetbrains.buildServer.iaa.common.CompileErrorIndex;
 import jetbrains.buildServer.serverSide.SBuild;
 import jetbrains.buildServer.serverSide.SProject;
 import jetbrains.buildServer.serverSide.STestRun;
 import jetbrains.buildServer.serverSide.problems.BuildProblem;
+import jetbrains.buildServer.users.SUser;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 public final class HeuristicContext {
   private final SProject mySProject;
   private final List<BuildProblem> myBuildProblems;
   private final List<STestRun> mySTestRuns;
   private final SBuild mySBuild;
+  // null means the changes are requested from the build every time
+  @Nullable private final BuildChanges myBuildChanges;
+  // null means the compile errors are read from the build log every time
+  @Nullable private final CompileErrorIndex myCompileErrors;
 
   public HeuristicContext(SBuild sBuild,
                    SProject sProject,
                    List<BuildProblem> buildProblems,
                    List<STestRun> sTestRuns) {
+    this(sBuild, sProject, buildProblems, sTestRuns, null, null);
+  }
+
+  public HeuristicContext(SBuild sBuild,
+                          SProject sProject,
+                          List<BuildProblem> buildProblems,
+                          List<STestRun> sTestRuns,
+                          @Nullable BuildChanges buildChanges,
+                          @Nullable CompileErrorIndex compileErrors) {
     mySBuild = sBuild;
     mySProject = sProject;
     myBuildProblems = buildProblems;
     mySTestRuns = sTestRuns;
+    myBuildChanges = buildChanges;
+    myCompileErrors = compileErrors;
   }
 
   @NotNull
@@ -56,5 +77,59 @@ public final class HeuristicContext {
   public List<STestRun> getTestRuns() {
     return mySTestRuns;
   }
+
+  /**
+   * @return users who committed to the build since the last build.
+   */
+  @NotNull
+  public Set<SUser> getCommitters() {
+    return getBuildChanges().getCommitters(mySBuild);
+  }
+
+  /**
+   * @return modifications of the build since the last build.
+   */
+  @NotNull
+  public List<BuildChanges.Modification> getModifications() {
+    return getBuildChanges().getModifications(mySBuild);
+  }
+
+  /**
+   * @return matcher of the files changed in the modifications, in the same order as {@link #getModifications()}.
+   */
+  @NotNull
+  public ChangedFilesMatcher getChangedFilesMatcher() {
+    return getBuildChanges().getChangedFilesMatcher(mySBuild);
+  }
+
+  /**
+   * @return committers of the build if they are already loaded by a previous heuristic or processing pass, otherwise null.
+   */
+  @Nullable
+  public Set<SUser> getLoadedCommitters() {
+    return myBuildChanges != null ? myBuildChanges.getLoadedCommitters() : null;
+  }
+
+  /**
+   * @return modifications of the build if they are already loaded by a previous heuristic or processing pass,
+   * otherwise null.
+   */
+  @Nullable
+  public List<BuildChanges.Modification> getLoadedModifications() {
+    return myBuildChanges != null ? myBuildChanges.getLoadedModifications() : null;
+  }
+
+  /**
+   * @return compile errors of the build by the index of their compilation block.
+   */
+  @NotNull
+  public CompileErrorIndex getCompileErrors() {
+    return myCompileErrors != null ? myCompileErrors : new CompileErrorIndex();
+  }
+
+  @NotNull
+  private BuildChanges getBuildChanges() {
+    return myBuildChanges != null ? myBuildChanges : new BuildChanges();
+  }
 }
 
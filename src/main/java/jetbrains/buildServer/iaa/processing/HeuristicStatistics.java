@@ -0,0 +1,83 @@
+/*
+ * Copyright 2000-2018 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.iaa.processing;
+
+import java.util.concurrent.TimeUnit;
+import jetbrains.buildServer.iaa.heuristics.Heuristic;
+import jetbrains.buildServer.iaa.utils.AutoAssignerMetrics;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Observed run time and hit rate of a heuristic. The numbers are kept in the plugin metrics,
+ * so they are also available via JMX.
+ */
+final class HeuristicStatistics {
+  @NotNull private final Heuristic myHeuristic;
+  @NotNull private final AutoAssignerMetrics myMetrics;
+  private final String myRuns;
+  private final String myRunTime;
+  private final String myOfferedItems;
+  private final String myResolvedItems;
+  private final String mySkippedRuns;
+  private final String myDeferredRuns;
+
+  HeuristicStatistics(@NotNull final Heuristic heuristic, @NotNull final AutoAssignerMetrics metrics) {
+    myHeuristic = heuristic;
+    myMetrics = metrics;
+    final String prefix = "heuristics." + heuristic.getClass().getSimpleName() + ".";
+    myRuns = prefix + "runs";
+    myRunTime = prefix + "runTimeMillis";
+    myOfferedItems = prefix + "offeredItems";
+    myResolvedItems = prefix + "resolvedItems";
+    mySkippedRuns = prefix + "skippedRuns";
+    myDeferredRuns = prefix + "deferredRuns";
+  }
+
+  void recordRun(final long runTimeNanos) {
+    myMetrics.increment(myRuns);
+    myMetrics.add(myRunTime, TimeUnit.NANOSECONDS.toMillis(runTimeNanos));
+  }
+
+  void recordItems(final int offeredItems, final int resolvedItems) {
+    myMetrics.add(myOfferedItems, offeredItems);
+    myMetrics.add(myResolvedItems, resolvedItems);
+  }
+
+  void recordSkipped() {
+    myMetrics.increment(mySkippedRuns);
+  }
+
+  void recordDeferred() {
+    myMetrics.increment(myDeferredRuns);
+  }
+
+  /**
+   * @return average observed run time, or the estimation of the heuristic if it hasn't run yet.
+   */
+  long getExpectedRunTimeMillis() {
+    final long runs = myMetrics.get(myRuns);
+    return runs == 0 ? myHeuristic.getEstimatedCostInMillis() : myMetrics.get(myRunTime) / runs;
+  }
+
+  /**
+   * @return observed share of the offered items which the heuristic resolved, 1 if it hasn't run yet.
+   */
+  double getHitRate() {
+    final long offeredItems = myMetrics.get(myOfferedItems);
+    return offeredItems == 0 ? 1 : (double)myMetrics.get(myResolvedItems) / offeredItems;
+  }
+}
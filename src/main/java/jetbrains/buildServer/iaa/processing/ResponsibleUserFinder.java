@@ -16,54 +16,269 @@
 
 package jetbrains.buildServer.iaa.processing;
 
+import com.intellij.openapi.diagnostic.Logger;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import jetbrains.buildServer.iaa.common.ChangeSetCache;
+import jetbrains.buildServer.iaa.common.FailedBuildInfo;
 import jetbrains.buildServer.iaa.common.HeuristicResult;
+import jetbrains.buildServer.iaa.common.Responsibility;
 import jetbrains.buildServer.iaa.heuristics.Heuristic;
+import jetbrains.buildServer.iaa.utils.AutoAssignerMetrics;
+import jetbrains.buildServer.iaa.utils.CustomParameters;
+import jetbrains.buildServer.iaa.utils.TimeBudget;
 import jetbrains.buildServer.serverSide.SBuild;
 import jetbrains.buildServer.serverSide.SProject;
 import jetbrains.buildServer.serverSide.STestRun;
 import jetbrains.buildServer.serverSide.problems.BuildProblem;
+import jetbrains.buildServer.util.ThreadUtil;
+import jetbrains.buildServer.util.executors.ExecutorsFactory;
 import org.jetbrains.annotations.NotNull;
 
+/**
+ * Runs the heuristics in the configured order, every heuristic gets the items which are not resolved by the previous ones.
+ * In the parallel mode the heuristics run speculatively at the same time over the same items, and their results
+ * are merged in the configured order. As every heuristic resolves items independently of each other, the merged
+ * result is the same as in the sequential mode.
+ */
 public class ResponsibleUserFinder {
+  private static final Logger LOGGER = Logger.getInstance(ResponsibleUserFinder.class.getName());
+
   private List<Heuristic> myOrderedHeuristics;
+  private final List<HeuristicStatistics> myStatistics = new ArrayList<>();
+  @NotNull private final ExecutorService myExecutor;
+  @NotNull private final ChangeSetCache myChangeSetCache;
 
-  ResponsibleUserFinder(@NotNull final List<Heuristic> orderedHeuristics) {
+  ResponsibleUserFinder(@NotNull final List<Heuristic> orderedHeuristics,
+                        @NotNull final AutoAssignerMetrics metrics,
+                        @NotNull final ChangeSetCache changeSetCache) {
     myOrderedHeuristics = orderedHeuristics;
+    myChangeSetCache = changeSetCache;
+    for (Heuristic heuristic : orderedHeuristics) {
+      myStatistics.add(new HeuristicStatistics(heuristic, metrics));
+    }
+    // threads are started only when the parallel mode is used
+    myExecutor = ExecutorsFactory.newFixedDaemonExecutor("Investigator-Auto-Assigner-Heuristics-",
+                                                         CustomParameters.getParallelHeuristicsThreadsCount());
+  }
+
+  public void dispose() {
+    ThreadUtil.shutdownGracefully(myExecutor, "Investigator-Auto-Assigner Heuristics");
   }
 
-  HeuristicResult findResponsibleUser(SBuild sBuild,
+  /**
+   * Runs the heuristics starting from the one where the previous pass of the build stopped.
+   * When the budget is exceeded, the run stops after the current heuristic and the unresolved items
+   * are left in the failed build info as pending work. Heuristics which are not applicable to the build
+   * are skipped, expensive ones are deferred to the next pass if the rest of the budget is not enough for them.
+   */
+  HeuristicResult findResponsibleUser(FailedBuildInfo failedBuildInfo,
+                                      SBuild sBuild,
                                       SProject sProject,
                                       List<BuildProblem> buildProblems,
-                                      List<STestRun> testRuns) {
-
+                                      List<STestRun> testRuns,
+                                      TimeBudget budget) {
+    final int firstHeuristic = failedBuildInfo.getNextHeuristic();
+    failedBuildInfo.clearPendingWork();
     if (buildProblems.isEmpty() && testRuns.isEmpty()) {
       return new HeuristicResult();
     }
 
     HeuristicResult result = new HeuristicResult();
-    for (Heuristic heuristic : myOrderedHeuristics) {
-      HeuristicContext heuristicContext = new HeuristicContext(sBuild, sProject, buildProblems, testRuns);
-      HeuristicResult heuristicResult = heuristic.findResponsibleUser(heuristicContext);
+    UnresolvedItems<BuildProblem> unresolvedProblems = new UnresolvedItems<>(buildProblems);
+    UnresolvedItems<STestRun> unresolvedTestRuns = new UnresolvedItems<>(testRuns);
+    if (CustomParameters.isParallelHeuristicsEnabled() && myOrderedHeuristics.size() - firstHeuristic > 1) {
+      runInParallel(firstHeuristic, result, unresolvedProblems, unresolvedTestRuns,
+                    new HeuristicContext(sBuild, sProject,
+                                         Collections.unmodifiableList(buildProblems),
+                                         Collections.unmodifiableList(testRuns),
+                                         failedBuildInfo.getBuildChanges(myChangeSetCache),
+                                         failedBuildInfo.getCompileErrors()),
+                    failedBuildInfo, budget);
+      return result;
+    }
 
-      buildProblems = heuristicContext.getBuildProblems()
-                                      .stream()
-                                      .filter(buildProblem -> heuristicResult.getResponsibility(buildProblem) == null)
-                                      .collect(Collectors.toList());
+    // the context shows only the unresolved items, so it is shared by all heuristics
+    HeuristicContext heuristicContext = new HeuristicContext(sBuild, sProject, unresolvedProblems, unresolvedTestRuns,
+                                                             failedBuildInfo.getBuildChanges(myChangeSetCache),
+                                                             failedBuildInfo.getCompileErrors());
+    boolean anyHeuristicRun = false;
+    for (int i = firstHeuristic; i < myOrderedHeuristics.size(); i++) {
+      Heuristic heuristic = myOrderedHeuristics.get(i);
+      HeuristicStatistics statistics = myStatistics.get(i);
+      if (!heuristic.isApplicable(heuristicContext)) {
+        statistics.recordSkipped();
+        continue;
+      }
+
+      final int unresolvedCount = unresolvedProblems.size() + unresolvedTestRuns.size();
+      // at least one heuristic runs in every pass, so the processing always moves on
+      if (anyHeuristicRun && shouldDefer(statistics, unresolvedCount, budget)) {
+        statistics.recordDeferred();
+        failedBuildInfo.setPendingWork(unresolvedProblems, unresolvedTestRuns, i);
+        break;
+      }
 
-      testRuns = heuristicContext.getTestRuns()
-                                 .stream()
-                                 .filter(sTestRun -> heuristicResult.getResponsibility(sTestRun) == null)
-                                 .collect(Collectors.toList());
+      anyHeuristicRun = true;
+      HeuristicResult heuristicResult = run(i, heuristicContext);
 
+      unresolvedProblems.resolveIf(buildProblem -> heuristicResult.getResponsibility(buildProblem) != null);
+      unresolvedTestRuns.resolveIf(sTestRun -> heuristicResult.getResponsibility(sTestRun) != null);
+      statistics.recordItems(unresolvedCount, unresolvedCount - unresolvedProblems.size() - unresolvedTestRuns.size());
       result.merge(heuristicResult);
 
-      if (buildProblems.isEmpty() && testRuns.isEmpty()) {
+      if (unresolvedProblems.isEmpty() && unresolvedTestRuns.isEmpty()) {
         break;
       }
+
+      if (i + 1 < myOrderedHeuristics.size() && budget.isExceeded()) {
+        failedBuildInfo.setPendingWork(unresolvedProblems, unresolvedTestRuns, i + 1);
+        break;
+      }
+    }
+
+    return result;
+  }
+
+  private void runInParallel(final int firstHeuristic,
+                             @NotNull final HeuristicResult result,
+                             @NotNull final UnresolvedItems<BuildProblem> unresolvedProblems,
+                             @NotNull final UnresolvedItems<STestRun> unresolvedTestRuns,
+                             @NotNull final HeuristicContext heuristicContext,
+                             @NotNull final FailedBuildInfo failedBuildInfo,
+                             @NotNull final TimeBudget budget) {
+    // null stands for a deferred heuristic, a null result stands for a heuristic which is not applicable
+    final List<Future<HeuristicResult>> speculative = new ArrayList<>();
+    // cancels only the heuristics which have not started yet: running ones are not interrupted,
+    // as they may be inside DB or VCS calls, and their results are dropped
+    final AtomicBoolean stopped = new AtomicBoolean();
+    final BitSet deferred = new BitSet();
+    final int itemsCount = unresolvedProblems.size() + unresolvedTestRuns.size();
+    for (int i = firstHeuristic + 1; i < myOrderedHeuristics.size(); i++) {
+      final int index = i;
+      if (shouldDefer(myStatistics.get(i), itemsCount, budget)) {
+        // heuristics which don't fit into the budget are not started, they are deferred when their turn comes
+        deferred.set(i);
+        speculative.add(null);
+      } else {
+        speculative.add(myExecutor.submit(() -> {
+          if (stopped.get() || !isApplicable(index, heuristicContext)) return null;
+
+          return run(index, heuristicContext);
+        }));
+      }
+    }
+
+    try {
+      for (int i = firstHeuristic; i < myOrderedHeuristics.size(); i++) {
+        final HeuristicResult heuristicResult;
+        if (i == firstHeuristic) {
+          if (!isApplicable(i, heuristicContext)) continue;
+
+          heuristicResult = run(i, heuristicContext);
+        } else {
+          final Future<HeuristicResult> future = speculative.get(i - firstHeuristic - 1);
+          if (deferred.get(i) ||
+              !future.isDone() &&
+              shouldDefer(myStatistics.get(i), unresolvedProblems.size() + unresolvedTestRuns.size(), budget)) {
+            myStatistics.get(i).recordDeferred();
+            failedBuildInfo.setPendingWork(unresolvedProblems, unresolvedTestRuns, i);
+            return;
+          }
+          final HeuristicResult speculativeResult;
+          try {
+            speculativeResult = future.get();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failedBuildInfo.setPendingWork(unresolvedProblems, unresolvedTestRuns, i);
+            return;
+          } catch (ExecutionException e) {
+            failedBuildInfo.setPendingWork(unresolvedProblems, unresolvedTestRuns, i);
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException)cause;
+            if (cause instanceof Error) throw (Error)cause;
+            throw new RuntimeException(cause);
+          }
+          if (speculativeResult == null) continue;
+
+          heuristicResult = speculativeResult;
+        }
+
+        // results for the items resolved by the previous heuristics are dropped, as in the sequential mode
+        final int unresolvedCount = unresolvedProblems.size() + unresolvedTestRuns.size();
+        unresolvedProblems.resolveIf(buildProblem -> {
+          final Responsibility responsibility = heuristicResult.getResponsibility(buildProblem);
+          if (responsibility == null) return false;
+
+          result.addResponsibility(buildProblem, responsibility);
+          return true;
+        });
+        unresolvedTestRuns.resolveIf(sTestRun -> {
+          final Responsibility responsibility = heuristicResult.getResponsibility(sTestRun);
+          if (responsibility == null) return false;
+
+          result.addResponsibility(sTestRun, responsibility);
+          return true;
+        });
+        myStatistics.get(i).recordItems(unresolvedCount,
+                                        unresolvedCount - unresolvedProblems.size() - unresolvedTestRuns.size());
+
+        if (unresolvedProblems.isEmpty() && unresolvedTestRuns.isEmpty()) {
+          return;
+        }
+
+        if (i + 1 < myOrderedHeuristics.size() && budget.isExceeded()) {
+          failedBuildInfo.setPendingWork(unresolvedProblems, unresolvedTestRuns, i + 1);
+          return;
+        }
+      }
+    } finally {
+      // speculative runs whose results are not needed anymore
+      stopped.set(true);
+      int cancelled = 0;
+      for (Future<HeuristicResult> future : speculative) {
+        if (future != null && future.cancel(false)) cancelled++;
+      }
+      if (cancelled > 0 && LOGGER.isDebugEnabled()) {
+        LOGGER.debug("Cancelled " + cancelled + " speculative heuristic runs for build #" +
+                     heuristicContext.getBuild().getBuildId());
+      }
     }
+  }
+
+  private boolean isApplicable(final int index, @NotNull final HeuristicContext heuristicContext) {
+    if (myOrderedHeuristics.get(index).isApplicable(heuristicContext)) return true;
 
+    myStatistics.get(index).recordSkipped();
+    return false;
+  }
+
+  @NotNull
+  private HeuristicResult run(final int index, @NotNull final HeuristicContext heuristicContext) {
+    final long start = System.nanoTime();
+    final HeuristicResult result = myOrderedHeuristics.get(index).findResponsibleUser(heuristicContext);
+    myStatistics.get(index).recordRun(System.nanoTime() - start);
     return result;
   }
+
+  /**
+   * A heuristic is deferred if it is not expected to fit into the rest of the budget. A heuristic which
+   * is not expected to resolve anything needs twice as much, so it doesn't use up the budget of the build.
+   */
+  private static boolean shouldDefer(@NotNull final HeuristicStatistics statistics,
+                                     final int unresolvedCount,
+                                     @NotNull final TimeBudget budget) {
+    final long remainingMillis = budget.getRemainingMillis();
+    if (remainingMillis == Long.MAX_VALUE) return false;
+
+    final long expectedRunTimeMillis = statistics.getExpectedRunTimeMillis();
+    final double expectedYield = statistics.getHitRate() * unresolvedCount;
+    return expectedRunTimeMillis > remainingMillis || (expectedYield < 1 && expectedRunTimeMillis * 2 > remainingMillis);
+  }
 }
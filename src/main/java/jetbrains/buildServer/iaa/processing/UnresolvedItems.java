@@ -0,0 +1,104 @@
+/*
+ * Copyright 2000-2018 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.iaa.processing;
+
+import java.util.AbstractList;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Predicate;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Read-only list view of the items which are not resolved yet. The items are kept in a fixed array and
+ * the unresolved ones are tracked with a bitset, so resolving items neither copies nor allocates lists.
+ */
+final class UnresolvedItems<T> extends AbstractList<T> {
+  private final Object[] myItems;
+  private final BitSet myUnresolved;
+  // positions of the unresolved items for random access, computed on demand
+  private int[] myPositions = null;
+  private int myPositionsModCount = -1;
+
+  UnresolvedItems(@NotNull final List<? extends T> items) {
+    myItems = items.toArray();
+    myUnresolved = new BitSet(myItems.length);
+    myUnresolved.set(0, myItems.length);
+  }
+
+  /**
+   * Marks the unresolved items which match the predicate as resolved.
+   */
+  void resolveIf(@NotNull final Predicate<? super T> isResolved) {
+    for (int i = myUnresolved.nextSetBit(0); i >= 0; i = myUnresolved.nextSetBit(i + 1)) {
+      if (isResolved.test(item(i))) {
+        myUnresolved.clear(i);
+        modCount++;
+      }
+    }
+  }
+
+  @Override
+  public T get(final int index) {
+    if (myPositionsModCount != modCount) {
+      myPositions = myUnresolved.stream().toArray();
+      myPositionsModCount = modCount;
+    }
+    if (index < 0 || index >= myPositions.length) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", size: " + myPositions.length);
+    }
+    return item(myPositions[index]);
+  }
+
+  @Override
+  public int size() {
+    return myUnresolved.cardinality();
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return myUnresolved.isEmpty();
+  }
+
+  @NotNull
+  @Override
+  public Iterator<T> iterator() {
+    return new Iterator<T>() {
+      private int myNext = myUnresolved.nextSetBit(0);
+
+      @Override
+      public boolean hasNext() {
+        return myNext >= 0;
+      }
+
+      @Override
+      public T next() {
+        if (myNext < 0) throw new NoSuchElementException();
+
+        final T result = item(myNext);
+        myNext = myUnresolved.nextSetBit(myNext + 1);
+        return result;
+      }
+    };
+  }
+
+  @SuppressWarnings("unchecked")
+  private T item(final int position) {
+    return (T)myItems[position];
+  }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2000-2018 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.iaa.utils;
+
+import com.intellij.openapi.diagnostic.Logger;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.management.*;
+import org.jetbrains.annotations.NotNull;
+
+import static java.lang.management.ManagementFactory.getPlatformMBeanServer;
+
+/**
+ * Named counters of the plugin. They are available via JMX at {@link #OBJECT_NAME}.
+ */
+public class AutoAssignerMetrics implements AutoAssignerMetricsMXBean {
+  private static final Logger LOGGER = Logger.getInstance(AutoAssignerMetrics.class.getName());
+  private static final String OBJECT_NAME = "jetbrains.buildServer.iaa:type=AutoAssignerMetrics";
+
+  // Counter names
+  public static final String DROPPED_BUILDS = "droppedBuilds";
+  public static final String SHED_BUILDS = "shedBuilds";
+  public static final String EVICTED_BUILDS = "evictedBuilds";
+  public static final String CYCLE_BUDGET_EXCEEDED = "cycleBudgetExceeded";
+  public static final String BUILD_BUDGET_EXCEEDED = "buildBudgetExceeded";
+  public static final String SKIPPED_STATISTICS = "skippedStatistics";
+  public static final String PREVIOUS_PROBLEMS_LOADED = "previousBuildProblemsLoaded";
+  public static final String PREVIOUS_PROBLEMS_REUSED = "previousBuildProblemsReused";
+
+  private final ConcurrentHashMap<String, AtomicLong> myCounters = new ConcurrentHashMap<>();
+
+  public void increment(@NotNull final String name) {
+    add(name, 1);
+  }
+
+  public void add(@NotNull final String name, final long delta) {
+    myCounters.computeIfAbsent(name, key -> new AtomicLong()).addAndGet(delta);
+  }
+
+  public long get(@NotNull final String name) {
+    AtomicLong counter = myCounters.get(name);
+    return counter == null ? 0 : counter.get();
+  }
+
+  @Override
+  @NotNull
+  public Map<String, Long> getCounters() {
+    Map<String, Long> result = new TreeMap<>();
+    myCounters.forEach((name, counter) -> result.put(name, counter.get()));
+    return result;
+  }
+
+  public void register() {
+    try {
+      getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+    } catch (InstanceAlreadyExistsException | MBeanRegistrationException | NotCompliantMBeanException |
+      MalformedObjectNameException e) {
+      LOGGER.warn("Failed to register plugin metrics at " + OBJECT_NAME + ": " + e.getMessage());
+    }
+  }
+
+  public void dispose() {
+    try {
+      getPlatformMBeanServer().unregisterMBean(new ObjectName(OBJECT_NAME));
+    } catch (InstanceNotFoundException | MBeanRegistrationException | MalformedObjectNameException e) {
+      LOGGER.debug("Failed to unregister plugin metrics at " + OBJECT_NAME + ": " + e.getMessage());
+    }
+  }
+}
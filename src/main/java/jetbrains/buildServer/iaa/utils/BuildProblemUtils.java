@@ -17,32 +17,48 @@
 package jetbrains.buildServer.iaa.utils;
 
 import java.util.List;
+import java.util.Map;
 import jetbrains.buildServer.serverSide.BuildPromotion;
 import jetbrains.buildServer.serverSide.BuildPromotionEx;
 import jetbrains.buildServer.serverSide.problems.BuildProblem;
 import jetbrains.buildServer.vcs.SelectPrevBuildPolicy;
 import org.jetbrains.annotations.NotNull;
-import org.jetbrains.annotations.Nullable;
 
 public class BuildProblemUtils {
+  @NotNull private final AutoAssignerMetrics myMetrics;
 
-  public boolean isNew(@NotNull BuildProblem buildProblem) {
-    BuildPromotion problemsOwner = buildProblem.getBuildPromotion();
+  public BuildProblemUtils(@NotNull final AutoAssignerMetrics metrics) {
+    myMetrics = metrics;
+  }
+
+  /**
+   * @param previousProblems build promotion id -> ids of problems of the previous build. It is filled on demand
+   *                         and should be shared by the problems checked during one processing pass.
+   */
+  public boolean isNew(@NotNull BuildProblem buildProblem, @NotNull Map<Long, IntHashSet> previousProblems) {
+    final BuildPromotion problemsOwner = buildProblem.getBuildPromotion();
+    IntHashSet previousIds = previousProblems.get(problemsOwner.getId());
+    if (previousIds != null) {
+      myMetrics.increment(AutoAssignerMetrics.PREVIOUS_PROBLEMS_REUSED);
+    } else {
+      previousIds = loadPreviousProblemIds(problemsOwner);
+      previousProblems.put(problemsOwner.getId(), previousIds);
+    }
+    return !previousIds.contains(buildProblem.getId());
+  }
 
+  @NotNull
+  private IntHashSet loadPreviousProblemIds(@NotNull final BuildPromotion problemsOwner) {
     BuildPromotionEx prevBuildPromo =
       (BuildPromotionEx)problemsOwner.getPreviousBuildPromotion(SelectPrevBuildPolicy.SINCE_LAST_BUILD);
     List<BuildProblem> prevProblems = prevBuildPromo == null ? null : prevBuildPromo.getBuildProblems();
-
-    return !containsBuildProblem(prevProblems, buildProblem);
-  }
-
-  private boolean containsBuildProblem(@Nullable List<BuildProblem> problems,
-                                              @NotNull BuildProblem buildProblem) {
-    if (problems == null) return false;
-
-    for (BuildProblem problem: problems) {
-      if (buildProblem.getId() == problem.getId()) return true;
+    IntHashSet ids = new IntHashSet(prevProblems == null ? 0 : prevProblems.size());
+    if (prevProblems != null) {
+      for (BuildProblem problem : prevProblems) {
+        ids.add(problem.getId());
+      }
     }
-    return false;
+    myMetrics.increment(AutoAssignerMetrics.PREVIOUS_PROBLEMS_LOADED);
+    return ids;
   }
 }
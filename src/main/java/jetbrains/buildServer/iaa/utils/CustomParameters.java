@@ -16,20 +16,235 @@
 
 package jetbrains.buildServer.iaa.utils;
 
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import jetbrains.buildServer.serverSide.SBuild;
+import jetbrains.buildServer.serverSide.SProject;
 import jetbrains.buildServer.serverSide.TeamCityProperties;
 import jetbrains.buildServer.util.StringUtil;
+import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 public class CustomParameters {
   private final static Integer MINIMAL_PROCESSING_DELAY = 5;
   private final static Integer DEFAULT_PROCESSING_DELAY_IN_SECONDS = 120;
+  private final static Integer DEFAULT_EVENTS_COALESCING_DELAY_IN_MILLIS = 3000;
+  private final static Integer DEFAULT_WORKERS_COUNT = 2;
+  private final static Integer DEFAULT_PARALLEL_HEURISTICS_THREADS_COUNT = 4;
+  private final static Integer DEFAULT_MAX_TRACKED_BUILDS = 1000;
+  private final static Integer DEFAULT_MAX_QUEUED_BUILDS = 500;
+  private final static Integer DEFAULT_BUILD_TIME_BUDGET_IN_MILLIS = 30_000;
+  private final static Integer DEFAULT_FAILED_TESTS_CHUNK_SIZE = 50;
+  private final static Integer DEFAULT_INVESTIGATIONS_CACHE_SIZE = 10_000;
+  private final static Integer DEFAULT_LAST_RESPONSIBLE_INDEX_SIZE = 10_000;
+  private final static Integer DEFAULT_PROBLEM_TEXT_HEAD_SIZE_IN_KB = 32;
+  private final static Integer DEFAULT_PROBLEM_TEXT_TAIL_SIZE_IN_KB = 32;
+  private final static Integer DEFAULT_PROBLEM_TEXT_STACK_TRACE_SIZE_IN_KB = 64;
+  private final static Integer DEFAULT_PROBLEM_TEXT_CACHE_SIZE_IN_KB = 16 * 1024;
+  private final static Integer DEFAULT_CHANGE_SETS_CACHE_SIZE = 100;
+  private final static double DEFAULT_PROJECT_WEIGHT = 1;
 
   public static int getProcessingDelayInSeconds() {
     int value = TeamCityProperties.getInteger("teamcity.autoassigner.processingDelayInSeconds", DEFAULT_PROCESSING_DELAY_IN_SECONDS);
     return value < MINIMAL_PROCESSING_DELAY ? MINIMAL_PROCESSING_DELAY : value;
   }
 
+  /**
+   * When enabled, build problem changes and build finish events trigger processing of the build right away,
+   * the periodic pass only serves as a safety net.
+   */
+  public static boolean isEventDrivenProcessingEnabled() {
+    return TeamCityProperties.getBooleanOrTrue("teamcity.autoassigner.eventDrivenProcessing.enabled");
+  }
+
+  /**
+   * When enabled, the heuristics of a build run speculatively in parallel, their results are merged in the configured order.
+   */
+  public static boolean isParallelHeuristicsEnabled() {
+    return TeamCityProperties.getBoolean("teamcity.autoassigner.parallelHeuristics.enabled");
+  }
+
+  /**
+   * @return number of threads running the heuristics in the parallel mode, shared by all workers.
+   */
+  public static int getParallelHeuristicsThreadsCount() {
+    int value = TeamCityProperties.getInteger("teamcity.autoassigner.parallelHeuristics.threadsCount",
+                                              DEFAULT_PARALLEL_HEURISTICS_THREADS_COUNT);
+    return Math.max(1, value);
+  }
+
+  /**
+   * @return time to wait for more events of the same build before processing it.
+   */
+  public static long getEventsCoalescingDelayInMillis() {
+    int value = TeamCityProperties.getInteger("teamcity.autoassigner.eventsCoalescingDelayInMillis",
+                                              DEFAULT_EVENTS_COALESCING_DELAY_IN_MILLIS);
+    return value < 0 ? 0 : value;
+  }
+
+  /**
+   * @return number of threads processing failed builds. It never exceeds the number of available processors.
+   */
+  public static int getWorkersCount() {
+    int value = TeamCityProperties.getInteger("teamcity.autoassigner.workersCount", DEFAULT_WORKERS_COUNT);
+    return Math.max(1, Math.min(value, Runtime.getRuntime().availableProcessors()));
+  }
+
+  /**
+   * @return max number of builds which are handed over to the workers at the same time.
+   */
+  public static int getMaxBuildsInFlight() {
+    int value = TeamCityProperties.getInteger("teamcity.autoassigner.maxBuildsInFlight", getWorkersCount());
+    return Math.max(1, value);
+  }
+
+  /**
+   * @return max number of failed builds the plugin keeps track of. Builds above the limit are dropped.
+   */
+  public static int getMaxTrackedBuilds() {
+    int value = TeamCityProperties.getInteger("teamcity.autoassigner.maxTrackedBuilds", DEFAULT_MAX_TRACKED_BUILDS);
+    return Math.max(1, value);
+  }
+
+  /**
+   * @return max number of builds waiting for a worker. Builds with the lowest priority above the limit are
+   * postponed till the next periodic pass.
+   */
+  public static int getMaxQueuedBuilds() {
+    int value = TeamCityProperties.getInteger("teamcity.autoassigner.maxQueuedBuilds", DEFAULT_MAX_QUEUED_BUILDS);
+    return Math.max(1, value);
+  }
+
+  /**
+   * @return time after which builds of a processing cycle which are not processed yet are postponed till the next
+   * cycle, and the builds which are being processed stop at the nearest clean point. Non-positive value means no limit.
+   */
+  public static long getCycleTimeBudgetInMillis() {
+    return TeamCityProperties.getLong("teamcity.autoassigner.cycleTimeBudgetInMillis",
+                                      TimeUnit.SECONDS.toMillis(getProcessingDelayInSeconds()));
+  }
+
+  /**
+   * @return time after which processing of a single build stops at the nearest clean point and is resumed
+   * in the next cycle. Non-positive value means no limit.
+   */
+  public static long getBuildTimeBudgetInMillis() {
+    return TeamCityProperties.getLong("teamcity.autoassigner.buildTimeBudgetInMillis",
+                                      DEFAULT_BUILD_TIME_BUDGET_IN_MILLIS);
+  }
+
+  /**
+   * @return number of failed tests which go through the filters, the heuristics and the assigners at once.
+   */
+  public static int getFailedTestsChunkSize() {
+    int value = TeamCityProperties.getInteger("teamcity.autoassigner.failedTestsChunkSize",
+                                              DEFAULT_FAILED_TESTS_CHUNK_SIZE);
+    return Math.max(1, value);
+  }
+
+  /**
+   * @return max number of tests whose investigations are cached. Zero disables the cache.
+   */
+  public static int getInvestigationsCacheSize() {
+    int value = TeamCityProperties.getInteger("teamcity.autoassigner.investigationsCacheSize",
+                                              DEFAULT_INVESTIGATIONS_CACHE_SIZE);
+    return Math.max(0, value);
+  }
+
+  /**
+   * @return max number of tests whose last responsible users are kept in memory.
+   */
+  public static int getLastResponsibleIndexSize() {
+    int value = TeamCityProperties.getInteger("teamcity.autoassigner.lastResponsibleIndexSize",
+                                              DEFAULT_LAST_RESPONSIBLE_INDEX_SIZE);
+    return Math.max(0, value);
+  }
+
+  /**
+   * @return size of the beginning of a problem text which is passed to the heuristics, in kilochars.
+   */
+  public static int getProblemTextHeadSizeInKb() {
+    int value = TeamCityProperties.getInteger("teamcity.autoassigner.problemText.headSizeInKb",
+                                              DEFAULT_PROBLEM_TEXT_HEAD_SIZE_IN_KB);
+    return Math.max(0, value);
+  }
+
+  /**
+   * @return size of the ending of a problem text which is passed to the heuristics, in kilochars.
+   */
+  public static int getProblemTextTailSizeInKb() {
+    int value = TeamCityProperties.getInteger("teamcity.autoassigner.problemText.tailSizeInKb",
+                                              DEFAULT_PROBLEM_TEXT_TAIL_SIZE_IN_KB);
+    return Math.max(0, value);
+  }
+
+  /**
+   * @return max size of the stack frames kept from the middle of a problem text, in kilochars.
+   */
+  public static int getProblemTextStackTraceSizeInKb() {
+    int value = TeamCityProperties.getInteger("teamcity.autoassigner.problemText.stackTraceSizeInKb",
+                                              DEFAULT_PROBLEM_TEXT_STACK_TRACE_SIZE_IN_KB);
+    return Math.max(0, value);
+  }
+
+  /**
+   * @return max total size of the cached problem texts, in kilochars. Zero disables the cache.
+   */
+  public static int getProblemTextCacheSizeInKb() {
+    int value = TeamCityProperties.getInteger("teamcity.autoassigner.problemText.cacheSizeInKb",
+                                              DEFAULT_PROBLEM_TEXT_CACHE_SIZE_IN_KB);
+    return Math.max(0, value);
+  }
+
+  /**
+   * @return max number of change sets whose changes and analysis results are shared by builds. Zero disables the cache.
+   */
+  public static int getChangeSetsCacheSize() {
+    int value = TeamCityProperties.getInteger("teamcity.autoassigner.changeSetsCacheSize", DEFAULT_CHANGE_SETS_CACHE_SIZE);
+    return Math.max(0, value);
+  }
+
+  /**
+   * When enabled, builds which are being processed are saved to a journal in the plugin data directory,
+   * so their processing is resumed after a server restart.
+   */
+  public static boolean isJournalEnabled() {
+    return TeamCityProperties.getBooleanOrTrue("teamcity.autoassigner.journal.enabled");
+  }
+
+  /**
+   * Weights are specified as a comma-separated list of "projectExternalId:weight" pairs. The weight of the nearest
+   * project in the hierarchy is taken. Builds of projects with a higher weight are processed first.
+   */
+  public static double getProjectWeight(@NotNull final SProject project) {
+    final String value = TeamCityProperties.getProperty("teamcity.autoassigner.projectWeights");
+    if (StringUtil.isEmptyOrSpaces(value)) {
+      return DEFAULT_PROJECT_WEIGHT;
+    }
+
+    Map<String, Double> weights = new HashMap<>();
+    for (String pair : value.split(",")) {
+      int separatorIndex = pair.lastIndexOf(':');
+      if (separatorIndex <= 0) continue;
+
+      try {
+        weights.put(pair.substring(0, separatorIndex).trim(), Double.parseDouble(pair.substring(separatorIndex + 1)));
+      } catch (NumberFormatException ignored) {
+      }
+    }
+
+    List<SProject> projectPath = project.getProjectPath();
+    for (int i = projectPath.size() - 1; i >= 0; i--) {
+      Double weight = weights.get(projectPath.get(i).getExternalId());
+      if (weight != null) {
+        return weight;
+      }
+    }
+    return DEFAULT_PROJECT_WEIGHT;
+  }
+
   public static Integer getMaxTestsPerBuildThreshold(SBuild build) {
     return parseThreshold(build.getBuildOwnParameters().get("autoassigner.maxTestsPerBuildNumber"));
   }
@@ -16,7 +16,13 @@
 
 package jetbrains.buildServer.iaa.utils;
 
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import javax.management.*;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import static java.lang.String.format;
 import static java.lang.management.ManagementFactory.getPlatformMBeanServer;
@@ -26,11 +32,29 @@ public class FlakyTestDetector {
    * The JMX ObjectName's used by the Flaky Test Detector MXBean.
    */
   private static final String OBJECT_NAME = "com.jetbrains.teamcity:type=FlakyTestDetector";
+  private static final String BATCH_OPERATION = "areFlaky";
+  private static final int MAX_CACHED_TESTS = 10_000;
+  private static final long CACHE_TTL_NANOS = TimeUnit.MINUTES.toNanos(10);
+  private static final long MIN_DISCOVERY_BACKOFF_NANOS = TimeUnit.MINUTES.toNanos(1);
+  private static final long MAX_DISCOVERY_BACKOFF_NANOS = TimeUnit.HOURS.toNanos(1);
+  private final com.intellij.openapi.diagnostic.Logger LOGGER = com.intellij.openapi.diagnostic.Logger.getInstance(FlakyTestDetector.class.getName());
+
+  @Nullable private final ObjectName myObjectName = createObjectName();
   /**
-   * Whether InstanceNotFoundException has been caught.
+   * Whether InstanceNotFoundException has been caught. The detector is looked up again after the backoff.
    */
   private boolean instanceNotFound = false;
-  private final com.intellij.openapi.diagnostic.Logger LOGGER = com.intellij.openapi.diagnostic.Logger.getInstance(FlakyTestDetector.class.getName());
+  private long myNextDiscoveryTime;
+  private long myDiscoveryBackoff = MIN_DISCOVERY_BACKOFF_NANOS;
+  // null until the detector is found
+  @Nullable private Boolean myBatchSupported = null;
+  // Test name id -> flaky flag and the time it was received
+  private final Map<Long, CachedFlag> myCache = new LinkedHashMap<Long, CachedFlag>(16, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(final Map.Entry<Long, CachedFlag> eldest) {
+      return size() > MAX_CACHED_TESTS;
+    }
+  };
 
   /**
    * If Flaky Test Detector plug-in is not installed, returns false
@@ -39,20 +63,148 @@ public class FlakyTestDetector {
    * @return whether the test specified by testNameId is flaky.
    */
   public boolean isFlaky(final long testNameId) {
-    if (instanceNotFound) return false;
+    Boolean cached = getCached(testNameId, System.nanoTime());
+    if (cached != null) {
+      return cached;
+    }
+
+    boolean[] flags = query(new long[]{testNameId});
+    return flags != null && flags.length > 0 && flags[0];
+  }
+
+  /**
+   * Loads flags of the given tests which are not cached yet with a single call when the detector supports it,
+   * so the following {@link #isFlaky} calls are answered from the cache.
+   */
+  public void prefetch(@NotNull final long[] testNameIds) {
+    final long now = System.nanoTime();
+    long[] missing = new long[testNameIds.length];
+    int missingCount = 0;
+    for (long testNameId : testNameIds) {
+      if (getCached(testNameId, now) == null) {
+        missing[missingCount++] = testNameId;
+      }
+    }
+
+    if (missingCount > 0) {
+      query(missingCount == missing.length ? missing : Arrays.copyOf(missing, missingCount));
+    }
+  }
+
+  @Nullable
+  private boolean[] query(@NotNull final long[] testNameIds) {
+    if (myObjectName == null || !isDiscoveryAllowed()) return null;
 
     final MBeanServer mBeanServer = getPlatformMBeanServer();
     try {
-      return (Boolean)mBeanServer.invoke(new ObjectName(OBJECT_NAME),
-                                         "isFlaky",
-                                         new Long[]{testNameId},
-                                         new String[]{"long"});
+      final boolean[] result;
+      if (isBatchSupported(mBeanServer)) {
+        result = (boolean[])mBeanServer.invoke(myObjectName,
+                                               BATCH_OPERATION,
+                                               new Object[]{testNameIds},
+                                               new String[]{long[].class.getName()});
+      } else {
+        result = new boolean[testNameIds.length];
+        for (int i = 0; i < testNameIds.length; i++) {
+          result[i] = (Boolean)mBeanServer.invoke(myObjectName,
+                                                  "isFlaky",
+                                                  new Long[]{testNameIds[i]},
+                                                  new String[]{"long"});
+        }
+      }
+      onFound();
+      cache(testNameIds, result);
+      return result;
     } catch (final InstanceNotFoundException ignored) {
-      instanceNotFound = true;
+      onNotFound();
+    } catch (final MBeanException | ReflectionException | IntrospectionException e) {
+      LOGGER.warn(e);
+    }
+    return null;
+  }
+
+  private boolean isBatchSupported(@NotNull final MBeanServer mBeanServer)
+    throws InstanceNotFoundException, IntrospectionException, ReflectionException {
+    synchronized (this) {
+      if (myBatchSupported != null) {
+        return myBatchSupported;
+      }
+    }
+
+    boolean batchSupported = false;
+    for (MBeanOperationInfo operation : mBeanServer.getMBeanInfo(myObjectName).getOperations()) {
+      MBeanParameterInfo[] signature = operation.getSignature();
+      if (BATCH_OPERATION.equals(operation.getName()) &&
+          signature.length == 1 && long[].class.getName().equals(signature[0].getType())) {
+        batchSupported = true;
+        break;
+      }
+    }
+
+    synchronized (this) {
+      myBatchSupported = batchSupported;
+    }
+    return batchSupported;
+  }
+
+  private synchronized boolean isDiscoveryAllowed() {
+    return !instanceNotFound || System.nanoTime() - myNextDiscoveryTime >= 0;
+  }
+
+  private synchronized void onFound() {
+    instanceNotFound = false;
+    myDiscoveryBackoff = MIN_DISCOVERY_BACKOFF_NANOS;
+  }
+
+  private synchronized void onNotFound() {
+    if (!instanceNotFound) {
       LOGGER.warn(format("Flaky Test Detector is not available at %s", OBJECT_NAME));
-    } catch (final MBeanException | ReflectionException | MalformedObjectNameException e) {
+    } else {
+      myDiscoveryBackoff = Math.min(myDiscoveryBackoff * 2, MAX_DISCOVERY_BACKOFF_NANOS);
+    }
+    instanceNotFound = true;
+    myBatchSupported = null;
+    myNextDiscoveryTime = System.nanoTime() + myDiscoveryBackoff;
+  }
+
+  @Nullable
+  private synchronized Boolean getCached(final long testNameId, final long now) {
+    CachedFlag cached = myCache.get(testNameId);
+    if (cached == null) {
+      return null;
+    }
+
+    if (now - cached.myReceivedAt >= CACHE_TTL_NANOS) {
+      myCache.remove(testNameId);
+      return null;
+    }
+    return cached.myFlaky;
+  }
+
+  private synchronized void cache(@NotNull final long[] testNameIds, @NotNull final boolean[] flags) {
+    final long now = System.nanoTime();
+    for (int i = 0; i < testNameIds.length && i < flags.length; i++) {
+      myCache.put(testNameIds[i], new CachedFlag(flags[i], now));
+    }
+  }
+
+  @Nullable
+  private ObjectName createObjectName() {
+    try {
+      return new ObjectName(OBJECT_NAME);
+    } catch (MalformedObjectNameException e) {
       LOGGER.warn(e);
+      return null;
+    }
+  }
+
+  private static final class CachedFlag {
+    private final boolean myFlaky;
+    private final long myReceivedAt;
+
+    private CachedFlag(final boolean flaky, final long receivedAt) {
+      myFlaky = flaky;
+      myReceivedAt = receivedAt;
     }
-    return false;
   }
 }
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2000-2018 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.iaa.utils;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+import org.jetbrains.annotations.NotNull;
+
+import static jetbrains.buildServer.iaa.utils.OpenAddressing.FREE;
+import static jetbrains.buildServer.iaa.utils.OpenAddressing.MIN_CAPACITY;
+import static jetbrains.buildServer.iaa.utils.OpenAddressing.capacityFor;
+import static jetbrains.buildServer.iaa.utils.OpenAddressing.findSlot;
+import static jetbrains.buildServer.iaa.utils.OpenAddressing.isOverloaded;
+
+/**
+ * Set of primitive ints based on open addressing with linear probing.
+ * It takes from 5 to 11 bytes per element and doesn't allocate objects per element.
+ * The class isn't thread-safe.
+ */
+public class IntHashSet {
+  // Zero marks free slots in the table, so it is stored separately
+  private boolean myContainsZero = false;
+  private int[] myTable;
+  private int mySize = 0;
+
+  public IntHashSet() {
+    this(MIN_CAPACITY);
+  }
+
+  public IntHashSet(final int expectedSize) {
+    myTable = new int[capacityFor(expectedSize)];
+  }
+
+  /**
+   * @return true if the set did not contain the value.
+   */
+  public boolean add(final int value) {
+    if (value == FREE) {
+      if (myContainsZero) return false;
+
+      myContainsZero = true;
+      mySize++;
+      return true;
+    }
+
+    final int index = findSlot(myTable, value);
+    if (myTable[index] == value) return false;
+
+    myTable[index] = value;
+    mySize++;
+    if (isOverloaded(mySize, myTable.length)) {
+      rehash(myTable.length * 2);
+    }
+    return true;
+  }
+
+  public boolean contains(final int value) {
+    if (value == FREE) return myContainsZero;
+
+    return myTable[findSlot(myTable, value)] == value;
+  }
+
+  public int size() {
+    return mySize;
+  }
+
+  public boolean isEmpty() {
+    return mySize == 0;
+  }
+
+  public void forEach(@NotNull final IntConsumer action) {
+    if (myContainsZero) {
+      action.accept(FREE);
+    }
+    for (int value : myTable) {
+      if (value != FREE) {
+        action.accept(value);
+      }
+    }
+  }
+
+  @NotNull
+  public int[] toArray() {
+    final int[] result = new int[mySize];
+    int position = 0;
+    if (myContainsZero) {
+      result[position++] = FREE;
+    }
+    for (int value : myTable) {
+      if (value != FREE) {
+        result[position++] = value;
+      }
+    }
+    return result;
+  }
+
+  @Override
+  public String toString() {
+    final int[] values = toArray();
+    Arrays.sort(values);
+    return Arrays.toString(values);
+  }
+
+  private void rehash(final int newCapacity) {
+    final int[] oldTable = myTable;
+    myTable = new int[newCapacity];
+    for (int value : oldTable) {
+      if (value != FREE) {
+        myTable[findSlot(myTable, value)] = value;
+      }
+    }
+  }
+}
@@ -18,10 +18,13 @@ package jetbrains.buildServer.iaa.utils;
 
 import java.util.*;
 import jetbrains.buildServer.BuildProject;
+import jetbrains.buildServer.iaa.utils.TestInvestigationsCache.TestInvestigations;
 import jetbrains.buildServer.responsibility.BuildProblemResponsibilityEntry;
 import jetbrains.buildServer.responsibility.ResponsibilityEntry;
 import jetbrains.buildServer.responsibility.ResponsibilityFacadeEx;
 import jetbrains.buildServer.responsibility.TestNameResponsibilityEntry;
+import jetbrains.buildServer.serverSide.BuildServerAdapter;
+import jetbrains.buildServer.serverSide.BuildServerListenerEventDispatcher;
 import jetbrains.buildServer.serverSide.SBuild;
 import jetbrains.buildServer.serverSide.SProject;
 import jetbrains.buildServer.serverSide.STest;
@@ -30,9 +33,10 @@ import jetbrains.buildServer.serverSide.audit.*;
 import jetbrains.buildServer.serverSide.impl.audit.filters.ActionTypesFilter;
 import jetbrains.buildServer.serverSide.impl.audit.filters.BuildProblemAuditId;
 import jetbrains.buildServer.serverSide.impl.audit.filters.ObjectTypeFilter;
-import jetbrains.buildServer.serverSide.impl.audit.filters.TestId;
 import jetbrains.buildServer.serverSide.problems.BuildProblem;
+import jetbrains.buildServer.tests.TestName;
 import jetbrains.buildServer.users.User;
+import jetbrains.buildServer.users.UserModel;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -40,11 +44,79 @@ public class InvestigationsManager {
 
   @NotNull private final AuditLogProvider myAuditLogProvider;
   @NotNull private final ResponsibilityFacadeEx myResponsibilityFacade;
+  @NotNull private final UserModel myUserModel;
+  @NotNull private final TestInvestigationsCache myTestInvestigationsCache;
+  @NotNull private final ProjectHierarchyIndex myProjectHierarchyIndex = new ProjectHierarchyIndex();
+  @NotNull private final LastResponsibleIndex myLastResponsibleIndex;
 
   InvestigationsManager(@NotNull final AuditLogProvider auditLogProvider,
-                        @NotNull final ResponsibilityFacadeEx responsibilityFacade) {
+                        @NotNull final ResponsibilityFacadeEx responsibilityFacade,
+                        @NotNull final UserModel userModel,
+                        @NotNull final BuildServerListenerEventDispatcher buildServerListenerEventDispatcher) {
     this.myAuditLogProvider = auditLogProvider;
     myResponsibilityFacade = responsibilityFacade;
+    myUserModel = userModel;
+    myTestInvestigationsCache = new TestInvestigationsCache(CustomParameters.getInvestigationsCacheSize());
+    myLastResponsibleIndex = new LastResponsibleIndex(auditLogProvider, CustomParameters.getLastResponsibleIndexSize());
+
+    buildServerListenerEventDispatcher.addListener(new BuildServerAdapter() {
+      @Override
+      public void responsibleChanged(@NotNull SProject project,
+                                     @NotNull Collection<TestName> testNames,
+                                     @NotNull ResponsibilityEntry entry,
+                                     boolean isUserAction) {
+        // the event carries no test name ids, they are taken from the new responsibility entries
+        boolean allResolved = true;
+        for (TestName testName : testNames) {
+          final TestNameResponsibilityEntry testEntry =
+            myResponsibilityFacade.findTestResponsibility(testName, project.getProjectId());
+          if (testEntry != null) {
+            myTestInvestigationsCache.invalidate(testEntry.getTestNameId());
+            updateLastResponsible(testEntry);
+          } else {
+            allResolved = false;
+          }
+        }
+        if (!allResolved) {
+          myTestInvestigationsCache.invalidateAll();
+        }
+      }
+
+      @Override
+      public void responsibleChanged(@NotNull SProject project,
+                                     @NotNull Collection<TestNameResponsibilityEntry> oldValues,
+                                     @NotNull Collection<TestNameResponsibilityEntry> newValues,
+                                     boolean isUserAction) {
+        oldValues.forEach(entry -> myTestInvestigationsCache.invalidate(entry.getTestNameId()));
+        newValues.forEach(entry -> {
+          myTestInvestigationsCache.invalidate(entry.getTestNameId());
+          updateLastResponsible(entry);
+        });
+      }
+
+      @Override
+      public void responsibleRemoved(@NotNull SProject project, @NotNull TestNameResponsibilityEntry entry) {
+        myTestInvestigationsCache.invalidate(entry.getTestNameId());
+      }
+
+      @Override
+      public void projectMoved(@NotNull SProject project, @NotNull SProject originalParentProject) {
+        myProjectHierarchyIndex.invalidate();
+      }
+
+      @Override
+      public void projectRemoved(@NotNull String projectId) {
+        myProjectHierarchyIndex.invalidate();
+      }
+    });
+  }
+
+  private void updateLastResponsible(@NotNull final TestNameResponsibilityEntry entry) {
+    final ResponsibilityEntry.State state = entry.getState();
+    if (!state.isActive() && !state.isFixed()) return;
+
+    myLastResponsibleIndex.update(entry.getTestNameId(), entry.getProject().getProjectId(),
+                                  entry.getResponsibleUser().getId(), entry.getTimestamp().getTime());
   }
 
   public boolean checkUnderInvestigation(@NotNull final SProject project,
@@ -59,10 +131,19 @@ public class InvestigationsManager {
   public boolean checkUnderInvestigation(@NotNull final SProject project,
                                          @NotNull final SBuild sBuild,
                                          @NotNull final STest test) {
-    for (TestNameResponsibilityEntry entry : test.getAllResponsibilities()) {
-      if (isActiveOrAlreadyFixed(sBuild, entry) && belongSameProjectOrParent(entry.getProject(), project)) return true;
+    final long testNameId = test.getTestNameId();
+    TestInvestigations investigations = myTestInvestigationsCache.get(testNameId);
+    if (investigations == null) {
+      final long modificationCount = myTestInvestigationsCache.getModificationCount();
+      investigations = new TestInvestigations();
+      for (TestNameResponsibilityEntry entry : test.getAllResponsibilities()) {
+        investigations.add(entry.getProject().getProjectId(), entry);
+      }
+      myTestInvestigationsCache.put(testNameId, investigations, modificationCount);
     }
-    return false;
+
+    return investigations.isInvestigated(myProjectHierarchyIndex.getHierarchyIds(project),
+                                         sBuild.getQueuedDate().getTime());
   }
 
   private boolean isActiveOrAlreadyFixed(@NotNull final SBuild sBuild, @NotNull final ResponsibilityEntry entry) {
@@ -75,39 +156,70 @@ public class InvestigationsManager {
   }
 
   private boolean belongSameProjectOrParent(@NotNull final BuildProject parent, @NotNull final BuildProject project) {
-    List<String> projectIds = collectProjectHierarchyIds(project);
-    return projectIds.contains(parent.getProjectId());
+    return myProjectHierarchyIndex.isSameOrAncestor(parent.getProjectId(), project);
   }
 
   @Nullable
   public User findPreviousResponsible(@NotNull final SProject project,
                                       @NotNull final SBuild sBuild,
                                       @NotNull final BuildProblem problem) {
-    User responsible = this.findAmongEntries(project, sBuild, problem.getAllResponsibilities());
-    if (responsible == null) {
-      responsible = this.findInAudit(problem);
+    return findPreviousResponsible(project, sBuild, Collections.singletonList(problem)).get(problem.getId());
+  }
+
+  /**
+   * @return users who were responsible for the build problems previous time, by problem id. Problems without
+   * suitable responsibility entries are looked up in the audit log with a single query.
+   */
+  @NotNull
+  public Map<Integer, User> findPreviousResponsible(@NotNull final SProject project,
+                                                    @NotNull final SBuild sBuild,
+                                                    @NotNull final Collection<BuildProblem> problems) {
+    Map<Integer, User> result = new HashMap<>();
+    List<BuildProblem> notFound = new ArrayList<>();
+    for (BuildProblem problem : problems) {
+      User responsible = this.findAmongEntries(project, sBuild, problem.getAllResponsibilities());
+      if (responsible != null) {
+        result.put(problem.getId(), responsible);
+      } else {
+        notFound.add(problem);
+      }
+    }
+
+    if (!notFound.isEmpty()) {
+      result.putAll(this.findInAudit(notFound));
     }
-    return responsible;
+    return result;
   }
 
-  @Nullable
-  private User findInAudit(final BuildProblem buildProblem) {
+  @NotNull
+  private Map<Integer, User> findInAudit(@NotNull final Collection<BuildProblem> buildProblems) {
+    Map<String, Integer> auditIdToProblemId = new HashMap<>();
+    for (BuildProblem buildProblem : buildProblems) {
+      auditIdToProblemId.put(BuildProblemAuditId.fromBuildProblem(buildProblem).asString(), buildProblem.getId());
+    }
+
     AuditLogBuilder builder = myAuditLogProvider.getBuilder();
-    builder.setObjectId(BuildProblemAuditId.fromBuildProblem(buildProblem).asString());
+    builder.addFilter(new ObjectIdsFilter(auditIdToProblemId.keySet()));
     builder.addFilter(new ActionTypesFilter(ActionType.BUILD_PROBLEM_MARK_AS_FIXED));
     builder.addFilter(new ObjectTypeFilter(ObjectType.BUILD_PROBLEM));
-    AuditLogAction lastAction = builder.findLastAction();
-    if (lastAction == null) {
-      return null;
-    }
+    Map<Integer, User> result = new HashMap<>();
+    Set<Integer> processedProblemIds = new HashSet<>();
+    for (AuditLogAction action : builder.getLogActions(-1)) {
+      Integer problemId = auditIdToProblemId.get(action.getObjectId());
+      // only the last action of a problem matters, the actions are ordered from the latest one
+      if (problemId == null || !processedProblemIds.add(problemId)) {
+        continue;
+      }
 
-    for (ObjectWrapper obj : lastAction.getObjects()) {
-      Object user = obj.getObject();
-      if (user instanceof User) {
-        return (User)user;
+      for (ObjectWrapper obj : action.getObjects()) {
+        Object user = obj.getObject();
+        if (user instanceof User) {
+          result.put(problemId, (User)user);
+          break;
+        }
       }
     }
-    return null;
+    return result;
   }
 
   @Nullable
@@ -134,44 +246,26 @@ public class InvestigationsManager {
     return null;
   }
 
+  /**
+   * @return users who were responsible for the tests previous time, by test name id. The users are taken from
+   * the index of the last responsible users, tests which are not in the index yet are loaded from the audit log.
+   */
   @NotNull
   public HashMap<Long, User> findInAudit(@NotNull final Iterable<STestRun> sTestRuns, @NotNull SProject project) {
-    AuditLogBuilder builder = myAuditLogProvider.getBuilder();
-    builder.setActionTypes(ActionType.TEST_MARK_AS_FIXED, ActionType.TEST_INVESTIGATION_ASSIGN);
-    List<String> projectIds = collectProjectHierarchyIds(project);
-    Set<String> objectIds = new HashSet<>();
+    Set<Long> testNameIds = new LinkedHashSet<>();
     for (STestRun testRun : sTestRuns) {
-      for (String projectId : projectIds) {
-        objectIds.add(TestId.createOn(testRun.getTest().getTestNameId(), projectId).asString());
-      }
+      testNameIds.add(testRun.getTest().getTestNameId());
     }
-    builder.addFilter(new ObjectIdsFilter(objectIds));
-    List<AuditLogAction> lastActions = builder.getLogActions(-1);
-    HashMap<Long, User> result = new HashMap<>();
-    for (AuditLogAction action : lastActions) {
-      for (ObjectWrapper obj : action.getObjects()) {
-        Object user = obj.getObject();
-        if (!(user instanceof User)) {
-          continue;
-        }
 
-        TestId testId = TestId.fromString(action.getObjectId());
-        if (testId != null) {
-          result.putIfAbsent(testId.getTestNameId(), (User)user);
-          break;
-        }
+    Map<Long, Long> userIds =
+      myLastResponsibleIndex.findLastResponsible(testNameIds, myProjectHierarchyIndex.getHierarchyIds(project));
+    HashMap<Long, User> result = new HashMap<>();
+    for (Map.Entry<Long, Long> entry : userIds.entrySet()) {
+      final User user = myUserModel.findUserById(entry.getValue());
+      if (user != null) {
+        result.put(entry.getKey(), user);
       }
     }
     return result;
   }
-
-  @NotNull
-  private List<String> collectProjectHierarchyIds(@NotNull BuildProject project) {
-    List<String> result = new ArrayList<>();
-    do {
-      result.add(project.getProjectId());
-      project = project.getParentProject();
-    } while (project != null);
-    return result;
-  }
 }
@@ -0,0 +1,250 @@
+/*
+ * Copyright 2000-2018 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.iaa.utils;
+
+import java.util.*;
+import jetbrains.buildServer.serverSide.audit.*;
+import jetbrains.buildServer.serverSide.impl.audit.filters.TestId;
+import jetbrains.buildServer.users.User;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Last users who were responsible for tests, by test name id and project id. A test is loaded from the audit log
+ * lazily for the projects it is requested in, the queries are split into pages and the number of read actions
+ * is bounded. Responsibility events update the index, so the audit log is queried once per test and project
+ * while the test stays in the index.
+ * The index keeps two generations of tests: when the current one is full, it becomes the previous one and
+ * the tests of the previous one are moved to the current generation on access, so rarely failing tests are dropped.
+ */
+class LastResponsibleIndex {
+  // Number of audit object ids in one query
+  private static final int PAGE_SIZE = 100;
+  // Number of actions read per audit object in one query
+  private static final int ACTIONS_PER_OBJECT = 5;
+  private static final long NO_USER = -1;
+  private static final LastResponsible NO_RESPONSIBLE = new LastResponsible(NO_USER, Long.MIN_VALUE);
+
+  @NotNull private final AuditLogProvider myAuditLogProvider;
+  private final int myGenerationSize;
+  private LongObjectHashMap<TestEntry> myCurrent = new LongObjectHashMap<>();
+  private LongObjectHashMap<TestEntry> myPrevious = new LongObjectHashMap<>();
+
+  LastResponsibleIndex(@NotNull final AuditLogProvider auditLogProvider, final int maxSize) {
+    myAuditLogProvider = auditLogProvider;
+    myGenerationSize = Math.max(1, maxSize / 2);
+  }
+
+  /**
+   * @return ids of the users who were responsible for the tests in one of the projects most recently, by test name id.
+   */
+  @NotNull
+  Map<Long, Long> findLastResponsible(@NotNull final Collection<Long> testNameIds,
+                                      @NotNull final Collection<String> projectIds) {
+    final Set<String> notLoaded = new LinkedHashSet<>();
+    synchronized (this) {
+      for (long testNameId : testNameIds) {
+        final TestEntry entry = getEntry(testNameId);
+        for (String projectId : projectIds) {
+          if (entry == null || entry.indexOf(projectId) < 0) {
+            notLoaded.add(TestId.createOn(testNameId, projectId).asString());
+          }
+        }
+      }
+    }
+
+    final Map<String, LastResponsible> loaded = notLoaded.isEmpty() ? Collections.emptyMap() : loadFromAudit(notLoaded);
+
+    final Map<Long, Long> result = new HashMap<>();
+    synchronized (this) {
+      for (String objectId : notLoaded) {
+        final TestId testId = TestId.fromString(objectId);
+        if (testId == null) continue;
+
+        final LastResponsible lastResponsible = loaded.get(objectId);
+        if (lastResponsible != null) {
+          update(testId.getTestNameId(), testId.getProjectId(), lastResponsible.myUserId, lastResponsible.myTimestamp);
+        }
+      }
+
+      for (long testNameId : testNameIds) {
+        final TestEntry entry = getEntry(testNameId);
+        if (entry == null) continue;
+
+        final long userId = entry.findLastResponsible(projectIds);
+        if (userId != NO_USER) {
+          result.put(testNameId, userId);
+        }
+      }
+    }
+    return result;
+  }
+
+  synchronized void update(final long testNameId, @NotNull final String projectId, final long userId, final long timestamp) {
+    final TestEntry entry = getEntry(testNameId);
+    final TestEntry updated = entry == null ? new TestEntry(projectId, userId, timestamp)
+                                            : entry.with(projectId, userId, timestamp);
+    if (updated != entry) {
+      putEntry(testNameId, updated);
+    }
+  }
+
+  @Nullable
+  private TestEntry getEntry(final long testNameId) {
+    TestEntry entry = myCurrent.get(testNameId);
+    if (entry == null) {
+      entry = myPrevious.get(testNameId);
+      if (entry != null) {
+        putEntry(testNameId, entry);
+      }
+    }
+    return entry;
+  }
+
+  private void putEntry(final long testNameId, @NotNull final TestEntry entry) {
+    if (myCurrent.put(testNameId, entry) == null && myCurrent.size() >= myGenerationSize) {
+      myPrevious = myCurrent;
+      myCurrent = new LongObjectHashMap<>();
+    }
+  }
+
+  /**
+   * @return the latest action of every audit object, or {@link #NO_RESPONSIBLE} if the object has no actions.
+   * Objects whose actions could be crowded out by the actions of other objects are not in the result.
+   */
+  @NotNull
+  private Map<String, LastResponsible> loadFromAudit(@NotNull final Collection<String> objectIds) {
+    final Map<String, LastResponsible> result = new HashMap<>();
+    List<String> remaining = new ArrayList<>(objectIds);
+    while (!remaining.isEmpty()) {
+      final List<String> page = remaining.subList(0, Math.min(PAGE_SIZE, remaining.size()));
+      final int maxActions = page.size() * ACTIONS_PER_OBJECT;
+      final AuditLogBuilder builder = myAuditLogProvider.getBuilder();
+      builder.setActionTypes(ActionType.TEST_MARK_AS_FIXED, ActionType.TEST_INVESTIGATION_ASSIGN);
+      builder.addFilter(new ObjectIdsFilter(new HashSet<>(page)));
+      final List<AuditLogAction> actions = builder.getLogActions(maxActions);
+
+      boolean found = false;
+      // the actions are ordered from the latest one
+      for (AuditLogAction action : actions) {
+        if (result.containsKey(action.getObjectId())) continue;
+
+        for (ObjectWrapper obj : action.getObjects()) {
+          final Object user = obj.getObject();
+          if (user instanceof User) {
+            result.put(action.getObjectId(), new LastResponsible(((User)user).getId(), action.getCreationDate().getTime()));
+            found = true;
+            break;
+          }
+        }
+      }
+
+      // all actions of the page are read only if there are fewer of them than requested
+      final boolean complete = actions.size() < maxActions;
+      final List<String> next = new ArrayList<>();
+      for (String objectId : page) {
+        if (result.containsKey(objectId)) continue;
+
+        if (complete) {
+          result.put(objectId, NO_RESPONSIBLE);
+        } else if (found) {
+          // the objects are queried once more without the ones which were found
+          next.add(objectId);
+        }
+      }
+      next.addAll(remaining.subList(page.size(), remaining.size()));
+      remaining = next;
+    }
+    return result;
+  }
+
+  private static final class LastResponsible {
+    private final long myUserId;
+    private final long myTimestamp;
+
+    private LastResponsible(final long userId, final long timestamp) {
+      myUserId = userId;
+      myTimestamp = timestamp;
+    }
+  }
+
+  /**
+   * Last responsible users of a test in the projects where it is known. Entries are copied on write.
+   */
+  private static final class TestEntry {
+    @NotNull private final String[] myProjectIds;
+    // NO_USER if the test has no responsible in the project
+    @NotNull private final long[] myUserIds;
+    @NotNull private final long[] myTimestamps;
+
+    private TestEntry(@NotNull final String projectId, final long userId, final long timestamp) {
+      this(new String[]{projectId}, new long[]{userId}, new long[]{timestamp});
+    }
+
+    private TestEntry(@NotNull final String[] projectIds, @NotNull final long[] userIds, @NotNull final long[] timestamps) {
+      myProjectIds = projectIds;
+      myUserIds = userIds;
+      myTimestamps = timestamps;
+    }
+
+    private int indexOf(@NotNull final String projectId) {
+      for (int i = 0; i < myProjectIds.length; i++) {
+        if (myProjectIds[i].equals(projectId)) return i;
+      }
+      return -1;
+    }
+
+    /**
+     * @return this entry if it already has a later action in the project, otherwise an updated copy.
+     */
+    @NotNull
+    private TestEntry with(@NotNull final String projectId, final long userId, final long timestamp) {
+      final int index = indexOf(projectId);
+      if (index >= 0) {
+        if (myTimestamps[index] >= timestamp) return this;
+
+        final long[] userIds = myUserIds.clone();
+        final long[] timestamps = myTimestamps.clone();
+        userIds[index] = userId;
+        timestamps[index] = timestamp;
+        return new TestEntry(myProjectIds, userIds, timestamps);
+      }
+
+      final int length = myProjectIds.length;
+      final String[] projectIds = Arrays.copyOf(myProjectIds, length + 1);
+      final long[] userIds = Arrays.copyOf(myUserIds, length + 1);
+      final long[] timestamps = Arrays.copyOf(myTimestamps, length + 1);
+      projectIds[length] = projectId;
+      userIds[length] = userId;
+      timestamps[length] = timestamp;
+      return new TestEntry(projectIds, userIds, timestamps);
+    }
+
+    private long findLastResponsible(@NotNull final Collection<String> projectIds) {
+      long result = NO_USER;
+      long resultTimestamp = Long.MIN_VALUE;
+      for (String projectId : projectIds) {
+        final int index = indexOf(projectId);
+        if (index >= 0 && myUserIds[index] != NO_USER && (result == NO_USER || myTimestamps[index] > resultTimestamp)) {
+          result = myUserIds[index];
+          resultTimestamp = myTimestamps[index];
+        }
+      }
+      return result;
+    }
+  }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2000-2018 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.iaa.utils;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import static jetbrains.buildServer.iaa.utils.OpenAddressing.FREE;
+import static jetbrains.buildServer.iaa.utils.OpenAddressing.MIN_CAPACITY;
+import static jetbrains.buildServer.iaa.utils.OpenAddressing.capacityFor;
+import static jetbrains.buildServer.iaa.utils.OpenAddressing.findSlot;
+import static jetbrains.buildServer.iaa.utils.OpenAddressing.isOverloaded;
+
+/**
+ * Map from primitive longs to non-null objects based on open addressing with linear probing.
+ * Keys are not boxed and no objects are allocated per entry. The class isn't thread-safe.
+ */
+public class LongObjectHashMap<V> {
+  // Zero marks free slots in the table, so the value of the zero key is stored separately
+  @Nullable private V myZeroValue = null;
+  private long[] myKeys;
+  private Object[] myValues;
+  private int mySize = 0;
+
+  public LongObjectHashMap() {
+    this(MIN_CAPACITY);
+  }
+
+  public LongObjectHashMap(final int expectedSize) {
+    final int capacity = capacityFor(expectedSize);
+    myKeys = new long[capacity];
+    myValues = new Object[capacity];
+  }
+
+  /**
+   * @return the previous value of the key, or null.
+   */
+  @Nullable
+  public V put(final long key, @NotNull final V value) {
+    if (key == FREE) {
+      final V previous = myZeroValue;
+      if (previous == null) mySize++;
+      myZeroValue = value;
+      return previous;
+    }
+
+    final int index = findSlot(myKeys, key);
+    if (myKeys[index] == key) {
+      @SuppressWarnings("unchecked") final V previous = (V)myValues[index];
+      myValues[index] = value;
+      return previous;
+    }
+
+    myKeys[index] = key;
+    myValues[index] = value;
+    mySize++;
+    if (isOverloaded(mySize, myKeys.length)) {
+      rehash(myKeys.length * 2);
+    }
+    return null;
+  }
+
+  @Nullable
+  @SuppressWarnings("unchecked")
+  public V get(final long key) {
+    if (key == FREE) return myZeroValue;
+
+    final int index = findSlot(myKeys, key);
+    return myKeys[index] == key ? (V)myValues[index] : null;
+  }
+
+  public int size() {
+    return mySize;
+  }
+
+  public boolean isEmpty() {
+    return mySize == 0;
+  }
+
+  private void rehash(final int newCapacity) {
+    final long[] oldKeys = myKeys;
+    final Object[] oldValues = myValues;
+    myKeys = new long[newCapacity];
+    myValues = new Object[newCapacity];
+    for (int i = 0; i < oldKeys.length; i++) {
+      if (oldKeys[i] == FREE) continue;
+
+      final int index = findSlot(myKeys, oldKeys[i]);
+      myKeys[index] = oldKeys[i];
+      myValues[index] = oldValues[i];
+    }
+  }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2000-2018 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.iaa.utils;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntConsumer;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Aho-Corasick automaton which finds all occurrences of a set of patterns with a single pass over a text.
+ * The automaton is immutable after it is built, so it may be shared between threads.
+ */
+public final class MultiPatternMatcher {
+  private static final int ROOT = 0;
+  private static final int NONE = -1;
+
+  private int myNodesCount = 1;
+  private char[][] myChildKeys = new char[16][];
+  private int[][] myChildNodes = new int[16][];
+  private int[] myChildCounts = new int[16];
+  // Longest proper suffix of the node which is a node too
+  private int[] myFail;
+  // Nearest node by the fail links where some pattern ends
+  private int[] myOutputLink;
+  // First pattern which ends at the node, other patterns with the same text are chained via myNextPattern
+  private int[] myFirstPattern = newNoneArray(16);
+  private final int[] myNextPattern;
+  private final int[] myEmptyPatterns;
+
+  public MultiPatternMatcher(@NotNull final List<String> patterns) {
+    myNextPattern = new int[patterns.size()];
+    int[] emptyPatterns = new int[patterns.size()];
+    int emptyPatternsCount = 0;
+    for (int i = 0; i < patterns.size(); i++) {
+      final String pattern = patterns.get(i);
+      if (pattern.isEmpty()) {
+        emptyPatterns[emptyPatternsCount++] = i;
+        continue;
+      }
+
+      int node = ROOT;
+      for (int j = 0; j < pattern.length(); j++) {
+        int child = findChild(node, pattern.charAt(j));
+        node = child == NONE ? addChild(node, pattern.charAt(j)) : child;
+      }
+      myNextPattern[i] = myFirstPattern[node];
+      myFirstPattern[node] = i;
+    }
+    myEmptyPatterns = Arrays.copyOf(emptyPatterns, emptyPatternsCount);
+    buildLinks();
+  }
+
+  /**
+   * Reports the index of every pattern which occurs in the text. A pattern which occurs several times
+   * may be reported several times. An empty pattern occurs in any text.
+   */
+  public void findAll(@NotNull final CharSequence text, @NotNull final IntConsumer consumer) {
+    for (int pattern : myEmptyPatterns) {
+      consumer.accept(pattern);
+    }
+
+    int node = ROOT;
+    for (int i = 0; i < text.length(); i++) {
+      final char c = text.charAt(i);
+      int next = findChild(node, c);
+      while (next == NONE && node != ROOT) {
+        node = myFail[node];
+        next = findChild(node, c);
+      }
+      node = next == NONE ? ROOT : next;
+
+      for (int output = myFirstPattern[node] != NONE ? node : myOutputLink[node];
+           output != NONE;
+           output = myOutputLink[output]) {
+        for (int pattern = myFirstPattern[output]; pattern != NONE; pattern = myNextPattern[pattern]) {
+          consumer.accept(pattern);
+        }
+      }
+    }
+  }
+
+  private void buildLinks() {
+    myFail = new int[myNodesCount];
+    myOutputLink = newNoneArray(myNodesCount);
+    ArrayDeque<Integer> queue = new ArrayDeque<>();
+    for (int i = 0; i < myChildCounts[ROOT]; i++) {
+      final int child = myChildNodes[ROOT][i];
+      myFail[child] = ROOT;
+      queue.add(child);
+    }
+
+    while (!queue.isEmpty()) {
+      final int node = queue.poll();
+      for (int i = 0; i < myChildCounts[node]; i++) {
+        final char c = myChildKeys[node][i];
+        final int child = myChildNodes[node][i];
+
+        int fail = myFail[node];
+        int failChild = findChild(fail, c);
+        while (failChild == NONE && fail != ROOT) {
+          fail = myFail[fail];
+          failChild = findChild(fail, c);
+        }
+        myFail[child] = failChild == NONE ? ROOT : failChild;
+        final int suffix = myFail[child];
+        myOutputLink[child] = myFirstPattern[suffix] != NONE ? suffix : myOutputLink[suffix];
+        queue.add(child);
+      }
+    }
+  }
+
+  private int findChild(final int node, final char c) {
+    final char[] keys = myChildKeys[node];
+    for (int i = 0; i < myChildCounts[node]; i++) {
+      if (keys[i] == c) return myChildNodes[node][i];
+    }
+    return NONE;
+  }
+
+  private int addChild(final int node, final char c) {
+    if (myNodesCount == myChildCounts.length) {
+      final int capacity = myNodesCount * 2;
+      myChildKeys = Arrays.copyOf(myChildKeys, capacity);
+      myChildNodes = Arrays.copyOf(myChildNodes, capacity);
+      myChildCounts = Arrays.copyOf(myChildCounts, capacity);
+      myFirstPattern = Arrays.copyOf(myFirstPattern, capacity);
+      Arrays.fill(myFirstPattern, myNodesCount, capacity, NONE);
+    }
+
+    final int count = myChildCounts[node];
+    if (myChildKeys[node] == null) {
+      myChildKeys[node] = new char[2];
+      myChildNodes[node] = new int[2];
+    } else if (count == myChildKeys[node].length) {
+      myChildKeys[node] = Arrays.copyOf(myChildKeys[node], count * 2);
+      myChildNodes[node] = Arrays.copyOf(myChildNodes[node], count * 2);
+    }
+
+    final int child = myNodesCount++;
+    myChildKeys[node][count] = c;
+    myChildNodes[node][count] = child;
+    myChildCounts[node] = count + 1;
+    return child;
+  }
+
+  @NotNull
+  private static int[] newNoneArray(final int size) {
+    int[] result = new int[size];
+    Arrays.fill(result, NONE);
+    return result;
+  }
+}
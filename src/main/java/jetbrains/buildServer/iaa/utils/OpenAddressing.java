@@ -0,0 +1,79 @@
+/*
+ * Copyright 2000-2018 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package jetbrains.buildServer.iaa.utils;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Probing and sizing of the open addressing tables with primitive keys. Tables use linear probing, zero marks
+ * free slots, so the tables keep the zero key separately. Capacities are powers of two and the load factor is 3/4.
+ */
+final class OpenAddressing {
+  static final int MIN_CAPACITY = 8;
+  static final int FREE = 0;
+
+  private OpenAddressing() {
+  }
+
+  /**
+   * @return index of the slot with the key, or of the free slot where the key should be put.
+   */
+  static int findSlot(@NotNull final int[] keys, final int key) {
+    final int mask = keys.length - 1;
+    int index = mix(key) & mask;
+    while (keys[index] != FREE && keys[index] != key) {
+      index = (index + 1) & mask;
+    }
+    return index;
+  }
+
+  /**
+   * @return index of the slot with the key, or of the free slot where the key should be put.
+   */
+  static int findSlot(@NotNull final long[] keys, final long key) {
+    final int mask = keys.length - 1;
+    int index = mix(key) & mask;
+    while (keys[index] != FREE && keys[index] != key) {
+      index = (index + 1) & mask;
+    }
+    return index;
+  }
+
+  static boolean isOverloaded(final int size, final int capacity) {
+    return size * 4 > capacity * 3;
+  }
+
+  static int capacityFor(final int expectedSize) {
+    int capacity = MIN_CAPACITY;
+    while (capacity * 3 < expectedSize * 4) {
+      capacity <<= 1;
+    }
+    return capacity;
+  }
+
+  // ids are often sequential, so spread them to avoid long probe sequences
+  private static int mix(final int value) {
+    final int hash = value * 0x9E3779B9;
+    return hash ^ (hash >>> 16);
+  }
+
+  private static int mix(final long value) {
+    final long hash = value * 0x9E3779B97F4A7C15L;
+    return (int)(hash ^ (hash >>> 32));
+  }
+}
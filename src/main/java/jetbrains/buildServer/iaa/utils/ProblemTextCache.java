@@ -0,0 +1,57 @@
+/*
+ * Copyright 2000-2018 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.iaa.utils;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * LRU cache of extracted problem texts bounded by their total length.
+ */
+class ProblemTextCache {
+  private final long myMaxLength;
+  private final Map<String, String> myCache = new LinkedHashMap<>(16, 0.75f, true);
+  private long myLength = 0;
+
+  ProblemTextCache(final long maxLength) {
+    myMaxLength = maxLength;
+  }
+
+  @Nullable
+  synchronized String get(@NotNull final String key) {
+    return myCache.get(key);
+  }
+
+  synchronized void put(@NotNull final String key, @NotNull final String text) {
+    if (text.length() > myMaxLength) return;
+
+    final String previous = myCache.put(key, text);
+    if (previous != null) {
+      myLength -= previous.length();
+    }
+    myLength += text.length();
+
+    final Iterator<String> eldest = myCache.values().iterator();
+    while (myLength > myMaxLength) {
+      myLength -= eldest.next().length();
+      eldest.remove();
+    }
+  }
+}
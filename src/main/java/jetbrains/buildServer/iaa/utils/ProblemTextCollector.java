@@ -0,0 +1,105 @@
+/*
+ * Copyright 2000-2018 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.iaa.utils;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Collects a bounded part of a problem text line by line: the beginning and the ending of the text, and the stack frames
+ * from its middle. Only the kept parts are copied, so the collected text does not depend on the size of the whole text.
+ */
+final class ProblemTextCollector {
+  private final int myHeadSize;
+  private final int myTailSize;
+  private final int myStackTraceSize;
+  private final StringBuilder myHead = new StringBuilder();
+  private final StringBuilder myStackTrace = new StringBuilder();
+  private final Deque<String> myTail = new ArrayDeque<>();
+  private int myTailLength = 0;
+  private boolean myHeadOpen = true;
+
+  ProblemTextCollector(final int headSize, final int tailSize, final int stackTraceSize) {
+    myHeadSize = headSize;
+    myTailSize = tailSize;
+    myStackTraceSize = stackTraceSize;
+  }
+
+  @NotNull
+  ProblemTextCollector append(@NotNull final String text) {
+    int lineStart = 0;
+    while (lineStart < text.length()) {
+      int lineEnd = text.indexOf('\n', lineStart);
+      if (lineEnd == -1) lineEnd = text.length();
+
+      appendLine(text, lineStart, lineEnd);
+      lineStart = lineEnd + 1;
+    }
+    return this;
+  }
+
+  private void appendLine(@NotNull final String text, int start, final int end) {
+    if (myHeadOpen) {
+      if (myHead.length() + end - start < myHeadSize) {
+        myHead.append(text, start, end).append('\n');
+        return;
+      }
+
+      myHeadOpen = false;
+      if (myHead.length() == 0 && myHeadSize > 0) {
+        // a single line is longer than the head, keep its beginning
+        myHead.append(text, start, start + myHeadSize).append('\n');
+        start += myHeadSize;
+      }
+    }
+
+    // lines longer than the tail are copied only if they may be kept as stack frames
+    start = Math.max(start, end - Math.max(myTailSize, myStackTraceSize - myStackTrace.length()));
+    final String line = text.substring(start, end);
+    myTail.addLast(line);
+    myTailLength += line.length();
+    while (myTailLength > myTailSize) {
+      final String evicted = myTail.removeFirst();
+      myTailLength -= evicted.length();
+      if (myStackTrace.length() + evicted.length() < myStackTraceSize && StackTraceParser.isFrame(evicted)) {
+        myStackTrace.append(evicted).append('\n');
+      }
+
+      if (myTail.isEmpty() && myTailSize > 0) {
+        // a single line is longer than the tail, keep its ending
+        final String ending = evicted.substring(evicted.length() - myTailSize);
+        myTail.addLast(ending);
+        myTailLength = ending.length();
+      }
+    }
+  }
+
+  @NotNull
+  String getText() {
+    final StringBuilder result = new StringBuilder(myHead.length() + myStackTrace.length() + myTailLength + myTail.size());
+    result.append(myHead).append(myStackTrace);
+    for (String line : myTail) {
+      result.append(line).append('\n');
+    }
+
+    if (result.length() > 0) {
+      result.setLength(result.length() - 1);
+    }
+    return result.toString();
+  }
+}
@@ -16,56 +16,73 @@
 
 package jetbrains.buildServer.iaa.utils;
 
-import java.util.List;
-import jetbrains.buildServer.BuildProblemTypes;
+import jetbrains.buildServer.iaa.common.CompileErrorIndex;
 import jetbrains.buildServer.serverSide.SBuild;
 import jetbrains.buildServer.serverSide.STest;
 import jetbrains.buildServer.serverSide.STestRun;
-import jetbrains.buildServer.serverSide.buildLog.LogMessage;
-import jetbrains.buildServer.serverSide.problems.BuildLogCompileErrorCollector;
 import jetbrains.buildServer.serverSide.problems.BuildProblem;
 import jetbrains.buildServer.tests.TestName;
-import jetbrains.buildServer.util.StringUtil;
 import org.jetbrains.annotations.NotNull;
-import org.jetbrains.annotations.Nullable;
-
-import static jetbrains.buildServer.serverSide.impl.problems.types.CompilationErrorTypeDetailsProvider.COMPILE_BLOCK_INDEX;
 
+/**
+ * Extracts texts of build problems and failed tests for the heuristics. Long texts are cut down to their beginning,
+ * ending and stack frames, see {@link ProblemTextCollector}. Extracted texts are cached.
+ */
 public class ProblemTextExtractor {
-  public String getBuildProblemText(@NotNull final BuildProblem problem, @NotNull final SBuild build) {
-    StringBuilder problemSpecificText = new StringBuilder();
+  private final ProblemTextCache myCache = new ProblemTextCache(CustomParameters.getProblemTextCacheSizeInKb() * 1024L);
 
+  public String getBuildProblemText(@NotNull final BuildProblem problem,
+                                    @NotNull final SBuild build,
+                                    @NotNull final CompileErrorIndex compileErrors) {
+    final String key = "problem:" + build.getBuildId() + ":" + problem.getId();
+    final String cached = myCache.get(key);
+    if (cached != null) return cached;
+
+    final ProblemTextCollector problemText = createCollector();
     // todo make an extension point here
-    if (problem.getBuildProblemData().getType().equals(BuildProblemTypes.TC_COMPILATION_ERROR_TYPE)) {
-      final Integer compileBlockIndex = getCompileBlockIndex(problem);
-      if (compileBlockIndex != null) {
-        final List<LogMessage> errors =
-          new BuildLogCompileErrorCollector().collectCompileErrors(compileBlockIndex, build);
-        for (LogMessage error : errors) {
-          problemSpecificText.append(error.getText()).append(" ");
-        }
+    final Integer compileBlockIndex = CompileErrorIndex.getCompileBlockIndex(problem);
+    if (compileBlockIndex != null) {
+      for (String error : compileErrors.getCompileErrors(build, compileBlockIndex)) {
+        problemText.append(error);
       }
     }
 
-    return problemSpecificText + " " + problem.getBuildProblemDescription();
-  }
-
-  @Nullable
-  private static Integer getCompileBlockIndex(@NotNull final BuildProblem problem) {
-    final String compilationBlockIndex = problem.getBuildProblemData().getAdditionalData();
-    if (compilationBlockIndex == null) return null;
-
-    try {
-      return Integer.parseInt(
-        StringUtil.stringToProperties(compilationBlockIndex, StringUtil.STD_ESCAPER2).get(COMPILE_BLOCK_INDEX));
-    } catch (Exception e) {
-      return null;
+    final String description = problem.getBuildProblemDescription();
+    if (description != null) {
+      problemText.append(description);
     }
+
+    final String result = problemText.getText();
+    myCache.put(key, result);
+    return result;
   }
 
   public String getBuildProblemText(STestRun sTestRun) {
+    final SBuild build = sTestRun.getBuild();
+    final String key = build == null ? null : "test:" + build.getBuildId() + ":" + sTestRun.getTestRunId();
+    final String cached = key == null ? null : myCache.get(key);
+    if (cached != null) return cached;
+
     final STest test = sTestRun.getTest();
     final TestName testName = test.getName();
-    return testName.getAsString() + " " + sTestRun.getFullText();
+    final ProblemTextCollector problemText = createCollector().append(testName.getAsString());
+    // the full text is provided by TeamCity as a single string, only the collected part of it is copied
+    final String fullText = sTestRun.getFullText();
+    if (fullText != null) {
+      problemText.append(fullText);
+    }
+
+    final String result = problemText.getText();
+    if (key != null) {
+      myCache.put(key, result);
+    }
+    return result;
+  }
+
+  @NotNull
+  private static ProblemTextCollector createCollector() {
+    return new ProblemTextCollector(CustomParameters.getProblemTextHeadSizeInKb() * 1024,
+                                    CustomParameters.getProblemTextTailSizeInKb() * 1024,
+                                    CustomParameters.getProblemTextStackTraceSizeInKb() * 1024);
   }
 }
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2000-2018 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.iaa.utils;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import jetbrains.buildServer.BuildProject;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Lazily computed ids of the project and all its ancestors, nearest first. Sets of a project are shared
+ * by all callers. The index has to be invalidated when the project tree changes.
+ */
+class ProjectHierarchyIndex {
+  private final Map<String, Set<String>> myHierarchies = new ConcurrentHashMap<>();
+  private long myGeneration = 0;
+
+  @NotNull
+  Set<String> getHierarchyIds(@NotNull final BuildProject project) {
+    final String projectId = project.getProjectId();
+    Set<String> hierarchyIds = myHierarchies.get(projectId);
+    if (hierarchyIds != null) {
+      return hierarchyIds;
+    }
+
+    final long generation = getGeneration();
+    Set<String> result = new LinkedHashSet<>();
+    BuildProject current = project;
+    do {
+      result.add(current.getProjectId());
+      current = current.getParentProject();
+    } while (current != null);
+
+    hierarchyIds = Collections.unmodifiableSet(result);
+    synchronized (this) {
+      // a hierarchy computed before the tree was changed is returned but not stored
+      if (generation == myGeneration) {
+        myHierarchies.put(projectId, hierarchyIds);
+      }
+    }
+    return hierarchyIds;
+  }
+
+  boolean isSameOrAncestor(@NotNull final String ancestorId, @NotNull final BuildProject project) {
+    return getHierarchyIds(project).contains(ancestorId);
+  }
+
+  synchronized void invalidate() {
+    myGeneration++;
+    myHierarchies.clear();
+  }
+
+  private synchronized long getGeneration() {
+    return myGeneration;
+  }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2000-2018 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.iaa.utils;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Extracts references to source files from JVM, .NET and Python stack frames. A reference is a key made of
+ * the simple file or class name and the name of its parent directory or package, e.g. "bar/Baz" for
+ * {@code com.foo.bar.Baz} and for {@code src/com/foo/bar/Baz.java}.
+ */
+public final class StackTraceParser {
+  // JVM: "at com.foo.Bar$Inner.method(Bar.java:12)", .NET: "at Foo.Bar.Method(String s) in C:\src\Foo\Bar.cs:line 12"
+  private static final Pattern AT_FRAME = Pattern.compile("\\bat\\s+(\\S+?)\\(([^)]*)\\)(?:\\s+in\\s+(.+?):line\\s+\\d+)?");
+  // Python: File "/src/pkg/module.py", line 12, in method
+  private static final Pattern PYTHON_FRAME = Pattern.compile("\\bFile\\s+\"([^\"]+)\",\\s+line\\s+\\d+");
+
+  private StackTraceParser() {
+  }
+
+  /**
+   * @return keys of the files referenced from the stack frames of the text, or an empty set if there are no frames.
+   */
+  @NotNull
+  public static Set<String> parseFileKeys(@NotNull final String text) {
+    Set<String> result = new LinkedHashSet<>();
+    int lineStart = 0;
+    while (lineStart < text.length()) {
+      int lineEnd = text.indexOf('\n', lineStart);
+      if (lineEnd == -1) lineEnd = text.length();
+
+      final String line = text.substring(lineStart, lineEnd);
+      if (line.contains("at ")) {
+        parseAtFrame(line, result);
+      } else if (line.contains("File \"")) {
+        Matcher matcher = PYTHON_FRAME.matcher(line);
+        if (matcher.find()) {
+          addIfNotNull(result, getFileKey(matcher.group(1)));
+        }
+      }
+      lineStart = lineEnd + 1;
+    }
+    return result;
+  }
+
+  /**
+   * @return true if the line is a JVM, .NET or Python stack frame.
+   */
+  public static boolean isFrame(@NotNull final String line) {
+    if (line.contains("at ") && AT_FRAME.matcher(line).find()) return true;
+    return line.contains("File \"") && PYTHON_FRAME.matcher(line).find();
+  }
+
+  /**
+   * @return key of the file with the given path, or null if the path has no file name.
+   */
+  @Nullable
+  public static String getFileKey(@NotNull final String path) {
+    final String normalized = path.replace('\\', '/');
+    final int nameStart = normalized.lastIndexOf('/') + 1;
+    final String name = removeExtension(normalized.substring(nameStart));
+    if (name.isEmpty()) return null;
+
+    final int parentEnd = nameStart - 1;
+    final int parentStart = parentEnd <= 0 ? 0 : normalized.lastIndexOf('/', parentEnd - 1) + 1;
+    final String parent = parentEnd <= 0 ? "" : normalized.substring(parentStart, parentEnd);
+    return key(parent, name);
+  }
+
+  private static void parseAtFrame(@NotNull final String line, @NotNull final Set<String> result) {
+    Matcher matcher = AT_FRAME.matcher(line);
+    if (!matcher.find()) return;
+
+    final String filePath = matcher.group(3);
+    if (filePath != null) {
+      addIfNotNull(result, getFileKey(filePath));
+      return;
+    }
+
+    String method = matcher.group(1);
+    // Java 9+ frames may start with a class loader or module name, e.g. "app//" or "java.base/"
+    method = method.substring(method.lastIndexOf('/') + 1);
+    final int methodStart = method.lastIndexOf('.');
+    if (methodStart <= 0) return;
+
+    final String type = method.substring(0, methodStart);
+    final int nameStart = type.lastIndexOf('.') + 1;
+    final String typeName = cutNested(type.substring(nameStart));
+    final String packageName = nameStart == 0 ? "" : type.substring(0, nameStart - 1);
+    final String parent = packageName.substring(packageName.lastIndexOf('.') + 1);
+    if (!typeName.isEmpty()) {
+      result.add(key(parent, typeName));
+    }
+
+    // the source file name may differ from the class name, e.g. for Kotlin top-level functions
+    final String location = matcher.group(2);
+    final int lineNumberStart = location.indexOf(':');
+    final String fileName = lineNumberStart == -1 ? location : location.substring(0, lineNumberStart);
+    if (fileName.indexOf('.') > 0 && fileName.indexOf(' ') == -1) {
+      result.add(key(parent, removeExtension(fileName)));
+    }
+  }
+
+  @NotNull
+  private static String cutNested(@NotNull final String typeName) {
+    int end = typeName.length();
+    for (int i = 0; i < typeName.length(); i++) {
+      final char c = typeName.charAt(i);
+      // '$' separates JVM nested classes, '+' - .NET ones, '`' starts .NET generic arity
+      if (c == '$' || c == '+' || c == '`') {
+        end = i;
+        break;
+      }
+    }
+    return typeName.substring(0, end);
+  }
+
+  @NotNull
+  private static String removeExtension(@NotNull final String fileName) {
+    final int extensionStart = fileName.lastIndexOf('.');
+    return extensionStart <= 0 ? fileName : fileName.substring(0, extensionStart);
+  }
+
+  @NotNull
+  private static String key(@NotNull final String parent, @NotNull final String name) {
+    return parent + "/" + name;
+  }
+
+  private static void addIfNotNull(@NotNull final Set<String> result, @Nullable final String key) {
+    if (key != null) {
+      result.add(key);
+    }
+  }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2000-2018 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.iaa.utils;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import jetbrains.buildServer.responsibility.ResponsibilityEntry;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Bounded LRU cache of test investigations. For every test name id it keeps the projects where the test
+ * is investigated, so the responsibility entries of a test are not scanned for each of its failures.
+ * Entries are invalidated on responsibility changes, a value computed concurrently with an invalidation is dropped.
+ */
+class TestInvestigationsCache {
+  private final int myMaxSize;
+  private final Map<Long, TestInvestigations> myCache;
+  private long myModificationCount = 0;
+
+  TestInvestigationsCache(final int maxSize) {
+    myMaxSize = maxSize;
+    myCache = new LinkedHashMap<Long, TestInvestigations>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(final Map.Entry<Long, TestInvestigations> eldest) {
+        return size() > myMaxSize;
+      }
+    };
+  }
+
+  @Nullable
+  synchronized TestInvestigations get(final long testNameId) {
+    return myCache.get(testNameId);
+  }
+
+  /**
+   * @return value to pass to {@link #put} to make sure no invalidation happened while the investigations were computed.
+   */
+  synchronized long getModificationCount() {
+    return myModificationCount;
+  }
+
+  synchronized void put(final long testNameId,
+                        @NotNull final TestInvestigations investigations,
+                        final long modificationCount) {
+    if (myMaxSize > 0 && modificationCount == myModificationCount) {
+      myCache.put(testNameId, investigations);
+    }
+  }
+
+  synchronized void invalidate(final long testNameId) {
+    myModificationCount++;
+    myCache.remove(testNameId);
+  }
+
+  synchronized void invalidateAll() {
+    myModificationCount++;
+    myCache.clear();
+  }
+
+  static final class TestInvestigations {
+    // Project id -> timestamp of the latest fixed investigation, or Long.MAX_VALUE if there is an active one
+    private final Map<String, Long> myLatestTimestamps = new HashMap<>();
+
+    void add(@NotNull final String projectId, @NotNull final ResponsibilityEntry entry) {
+      final ResponsibilityEntry.State state = entry.getState();
+      final long timestamp;
+      if (state.isActive()) {
+        timestamp = Long.MAX_VALUE;
+      } else if (state.isFixed()) {
+        timestamp = entry.getTimestamp().getTime();
+      } else {
+        return;
+      }
+      myLatestTimestamps.merge(projectId, timestamp, Math::max);
+    }
+
+    /**
+     * @return true if the test has an active investigation or an investigation fixed not earlier than the given time
+     * in any of the given projects.
+     */
+    boolean isInvestigated(@NotNull final Collection<String> projectIds, final long since) {
+      for (String projectId : projectIds) {
+        Long timestamp = myLatestTimestamps.get(projectId);
+        if (timestamp != null && timestamp >= since) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+}
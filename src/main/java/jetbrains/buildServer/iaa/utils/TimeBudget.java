@@ -0,0 +1,81 @@
+/*
+ * Copyright 2000-2018 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.iaa.utils;
+
+import java.util.concurrent.TimeUnit;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Deadline for a piece of work. A budget may be nested into another one, e.g. the budget of a single build
+ * into the budget of a processing cycle, then it is exceeded as soon as any of them is exceeded.
+ */
+public final class TimeBudget {
+  public static final TimeBudget UNLIMITED = new TimeBudget(0, null);
+
+  // System.nanoTime() based, 0 means no deadline
+  private final long myDeadline;
+  @Nullable private final TimeBudget myParent;
+
+  private TimeBudget(final long deadline, @Nullable final TimeBudget parent) {
+    myDeadline = deadline;
+    myParent = parent;
+  }
+
+  /**
+   * @return budget which starts now, or the unlimited budget if the given time is not positive.
+   */
+  @NotNull
+  public static TimeBudget ofMillis(final long millis) {
+    return UNLIMITED.limit(millis);
+  }
+
+  /**
+   * @return nested budget which starts now and is exceeded either after the given time or together with this one.
+   */
+  @NotNull
+  public TimeBudget limit(final long millis) {
+    if (millis <= 0) {
+      return this == UNLIMITED ? UNLIMITED : new TimeBudget(0, this);
+    }
+
+    // avoid the unlikely collision with the "no deadline" marker
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+    return new TimeBudget(deadline == 0 ? 1 : deadline, this == UNLIMITED ? null : this);
+  }
+
+  /**
+   * @return time left until this budget or any of its parents is exceeded, or Long.MAX_VALUE for the unlimited budget.
+   */
+  public long getRemainingMillis() {
+    long result = Long.MAX_VALUE;
+    for (TimeBudget budget = this; budget != null; budget = budget.myParent) {
+      if (budget.myDeadline != 0) {
+        final long remaining = TimeUnit.NANOSECONDS.toMillis(budget.myDeadline - System.nanoTime());
+        result = Math.min(result, Math.max(0, remaining));
+      }
+    }
+    return result;
+  }
+
+  public boolean isExceeded() {
+    if (myDeadline != 0 && System.nanoTime() - myDeadline >= 0) {
+      return true;
+    }
+    return myParent != null && myParent.isExceeded();
+  }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2000-2018 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.iaa;
+
+import jetbrains.buildServer.BaseTestCase;
+import jetbrains.buildServer.iaa.FailedBuildsQueue.QueuedBuild;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+@Test
+public class FailedBuildsQueueTest extends BaseTestCase {
+
+  public void Test_FinishedBuildsGoFirst() {
+    FailedBuildsQueue queue = new FailedBuildsQueue(10);
+    queue.offer(new QueuedBuild(1, false, 1, 100));
+    queue.offer(new QueuedBuild(2, true, 1, 200));
+
+    Assert.assertEquals(queue.poll().getBuildId(), 2);
+    Assert.assertEquals(queue.poll().getBuildId(), 1);
+    Assert.assertNull(queue.poll());
+  }
+
+  public void Test_HeavierProjectsGoFirst() {
+    FailedBuildsQueue queue = new FailedBuildsQueue(10);
+    queue.offer(new QueuedBuild(1, false, 1, 100));
+    queue.offer(new QueuedBuild(2, false, 2, 200));
+
+    Assert.assertEquals(queue.poll().getBuildId(), 2);
+  }
+
+  public void Test_OlderFailuresGoFirst() {
+    FailedBuildsQueue queue = new FailedBuildsQueue(10);
+    queue.offer(new QueuedBuild(1, false, 1, 200));
+    queue.offer(new QueuedBuild(2, false, 1, 100));
+
+    Assert.assertEquals(queue.poll().getBuildId(), 2);
+  }
+
+  public void Test_OfferUpdatesPriority() {
+    FailedBuildsQueue queue = new FailedBuildsQueue(10);
+    queue.offer(new QueuedBuild(1, false, 1, 100));
+    queue.offer(new QueuedBuild(2, false, 1, 200));
+    queue.offer(new QueuedBuild(2, true, 1, 200));
+
+    Assert.assertEquals(queue.size(), 2);
+    Assert.assertEquals(queue.poll().getBuildId(), 2);
+  }
+
+  public void Test_LowestPriorityBuildIsShed() {
+    FailedBuildsQueue queue = new FailedBuildsQueue(2);
+    Assert.assertNull(queue.offer(new QueuedBuild(1, false, 1, 100)));
+    Assert.assertNull(queue.offer(new QueuedBuild(2, false, 1, 300)));
+
+    QueuedBuild shed = queue.offer(new QueuedBuild(3, true, 1, 200));
+
+    Assert.assertNotNull(shed);
+    Assert.assertEquals(shed.getBuildId(), 2);
+    Assert.assertEquals(queue.size(), 2);
+  }
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright 2000-2018 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package jetbrains.buildServer.iaa;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import jetbrains.buildServer.BaseTestCase;
+import jetbrains.buildServer.iaa.common.Constants;
+import jetbrains.buildServer.iaa.common.FailedBuildInfo;
+import jetbrains.buildServer.iaa.processing.FailedTestAndBuildProblemsProcessor;
+import jetbrains.buildServer.iaa.utils.AutoAssignerMetrics;
+import jetbrains.buildServer.iaa.utils.CustomParameters;
+import jetbrains.buildServer.iaa.utils.TimeBudget;
+import jetbrains.buildServer.serverSide.*;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@Test
+public class FailedTestAndBuildProblemsDispatcherTest extends BaseTestCase {
+  private static final int COALESCING_DELAY = 200;
+  private static final int WAIT_TIMEOUT = 5000;
+  private FailedTestAndBuildProblemsProcessor myProcessor;
+  private BuildsManager myBuildsManager;
+  private ServerPaths myServerPaths;
+  private AutoAssignerMetrics myMetrics;
+  private BuildServerListener myListener;
+
+  @BeforeMethod
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    setInternalProperty("teamcity.autoassigner.eventsCoalescingDelayInMillis", String.valueOf(COALESCING_DELAY));
+    setInternalProperty("teamcity.autoassigner.workersCount", "2");
+    myProcessor = Mockito.mock(FailedTestAndBuildProblemsProcessor.class);
+    myBuildsManager = Mockito.mock(BuildsManager.class);
+    myServerPaths = Mockito.mock(ServerPaths.class);
+    when(myServerPaths.getPluginDataDirectory()).thenReturn(createTempDir());
+    myMetrics = new AutoAssignerMetrics();
+  }
+
+  @AfterMethod
+  @Override
+  protected void tearDown() throws Exception {
+    if (myListener != null) {
+      myListener.serverShutdown();
+      myListener = null;
+    }
+    super.tearDown();
+  }
+
+  public void Test_EventsOfBuildAreCoalesced() {
+    createDispatcher();
+    BuildEx sBuild = mockBuild(239);
+
+    myListener.buildProblemsChanged(sBuild, Collections.emptyList(), Collections.emptyList());
+    myListener.buildProblemsChanged(sBuild, Collections.emptyList(), Collections.emptyList());
+    myListener.buildProblemsChanged(sBuild, Collections.emptyList(), Collections.emptyList());
+
+    verify(myProcessor, after(COALESCING_DELAY * 5).times(1))
+      .processBuild(any(FailedBuildInfo.class), eq(sBuild), any(TimeBudget.class));
+  }
+
+  public void Test_BuildIsAlwaysProcessedByItsWorker() {
+    createDispatcher();
+    final Map<Long, String> threadNames = new ConcurrentHashMap<>();
+    final AtomicInteger processedPasses = new AtomicInteger();
+    doAnswer(invocation -> {
+      FailedBuildInfo failedBuildInfo = invocation.getArgument(0);
+      String previous = threadNames.putIfAbsent(failedBuildInfo.getBuildId(), Thread.currentThread().getName());
+      if (previous != null) {
+        Assert.assertEquals(Thread.currentThread().getName(), previous);
+      }
+      processedPasses.incrementAndGet();
+      return null;
+    }).when(myProcessor).processBuild(any(FailedBuildInfo.class), any(SBuild.class), any(TimeBudget.class));
+
+    BuildEx first = mockBuild(10);
+    BuildEx second = mockBuild(11);
+    myListener.buildProblemsChanged(first, Collections.emptyList(), Collections.emptyList());
+    myListener.buildProblemsChanged(second, Collections.emptyList(), Collections.emptyList());
+    verify(myProcessor, timeout(WAIT_TIMEOUT).times(2))
+      .processBuild(any(FailedBuildInfo.class), any(SBuild.class), any(TimeBudget.class));
+    myListener.buildProblemsChanged(first, Collections.emptyList(), Collections.emptyList());
+    verify(myProcessor, timeout(WAIT_TIMEOUT).times(3))
+      .processBuild(any(FailedBuildInfo.class), any(SBuild.class), any(TimeBudget.class));
+
+    Assert.assertEquals(processedPasses.get(), 3);
+    final int workersCount = CustomParameters.getWorkersCount();
+    for (Map.Entry<Long, String> entry : threadNames.entrySet()) {
+      String workerPrefix = "Investigator-Auto-Assigner-Worker-" + Math.floorMod(entry.getKey(), (long)workersCount) + "-";
+      Assert.assertTrue(entry.getValue().startsWith(workerPrefix), entry.getValue());
+    }
+  }
+
+  public void Test_BuildsInFlightAreLimited() {
+    setInternalProperty("teamcity.autoassigner.maxBuildsInFlight", "1");
+    createDispatcher();
+    final AtomicInteger inFlight = new AtomicInteger();
+    final AtomicInteger maxInFlight = new AtomicInteger();
+    doAnswer(invocation -> {
+      maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+      Thread.sleep(100);
+      inFlight.decrementAndGet();
+      return null;
+    }).when(myProcessor).processBuild(any(FailedBuildInfo.class), any(SBuild.class), any(TimeBudget.class));
+
+    for (long buildId = 1; buildId <= 4; buildId++) {
+      myListener.buildProblemsChanged(mockBuild(buildId), Collections.emptyList(), Collections.emptyList());
+    }
+
+    verify(myProcessor, timeout(WAIT_TIMEOUT).times(4))
+      .processBuild(any(FailedBuildInfo.class), any(SBuild.class), any(TimeBudget.class));
+    Assert.assertEquals(maxInFlight.get(), 1);
+  }
+
+  public void Test_RemovedBuildIsEvicted() {
+    createDispatcher();
+    BuildEx sBuild = mockBuild(239);
+    when(myBuildsManager.findBuildInstanceById(239)).thenReturn(null);
+
+    myListener.buildProblemsChanged(sBuild, Collections.emptyList(), Collections.emptyList());
+
+    verify(myProcessor, after(COALESCING_DELAY * 5).never())
+      .processBuild(any(FailedBuildInfo.class), any(SBuild.class), any(TimeBudget.class));
+    Assert.assertEquals(myMetrics.get(AutoAssignerMetrics.EVICTED_BUILDS), 1);
+  }
+
+  public void Test_BuildsAboveTrackedLimitAreDropped() {
+    setInternalProperty("teamcity.autoassigner.maxTrackedBuilds", "1");
+    createDispatcher();
+    BuildEx first = mockBuild(1);
+    BuildEx second = mockBuild(2);
+    // the first build stays tracked as it is still running
+    when(first.isFinished()).thenReturn(false);
+
+    myListener.buildProblemsChanged(first, Collections.emptyList(), Collections.emptyList());
+    myListener.buildProblemsChanged(second, Collections.emptyList(), Collections.emptyList());
+
+    verify(myProcessor, timeout(WAIT_TIMEOUT)).processBuild(any(FailedBuildInfo.class), eq(first), any(TimeBudget.class));
+    verify(myProcessor, after(COALESCING_DELAY * 2).never())
+      .processBuild(any(FailedBuildInfo.class), eq(second), any(TimeBudget.class));
+    Assert.assertEquals(myMetrics.get(AutoAssignerMetrics.DROPPED_BUILDS), 1);
+  }
+
+  private void createDispatcher() {
+    BuildServerListenerEventDispatcher eventDispatcher = Mockito.mock(BuildServerListenerEventDispatcher.class);
+    new FailedTestAndBuildProblemsDispatcher(eventDispatcher, myProcessor, myMetrics, myBuildsManager, myServerPaths);
+    ArgumentCaptor<BuildServerListener> listenerCaptor = ArgumentCaptor.forClass(BuildServerListener.class);
+    verify(eventDispatcher).addListener(listenerCaptor.capture());
+    myListener = listenerCaptor.getValue();
+  }
+
+  private BuildEx mockBuild(final long buildId) {
+    BuildEx sBuild = Mockito.mock(BuildEx.class);
+    when(sBuild.getBuildId()).thenReturn(buildId);
+    when(sBuild.isFinished()).thenReturn(true);
+    when(sBuild.isPersonal()).thenReturn(false);
+    when(sBuild.getBuildFeaturesOfType(Constants.BUILD_FEATURE_TYPE))
+      .thenReturn(Collections.singletonList(Mockito.mock(SBuildFeatureDescriptor.class)));
+    when(myBuildsManager.findBuildInstanceById(buildId)).thenReturn(sBuild);
+    return sBuild;
+  }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright 2000-2018 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.iaa;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import jetbrains.buildServer.BaseTestCase;
+import jetbrains.buildServer.iaa.PendingBuildsJournal.PendingBuild;
+import jetbrains.buildServer.iaa.common.FailedBuildInfo;
+import jetbrains.buildServer.serverSide.SBuild;
+import jetbrains.buildServer.serverSide.STestRun;
+import org.mockito.Mockito;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.mockito.Mockito.when;
+
+@Test
+public class PendingBuildsJournalTest extends BaseTestCase {
+  private File myFile;
+  private SBuild mySBuild;
+
+  @BeforeMethod
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myFile = new File(createTempDir(), "pending-builds.journal");
+    mySBuild = Mockito.mock(SBuild.class);
+    when(mySBuild.getBuildId()).thenReturn(239L);
+  }
+
+  public void Test_ProgressIsRestored() {
+    PendingBuildsJournal journal = new PendingBuildsJournal(myFile);
+    journal.open(Collections.emptyList());
+    FailedBuildInfo failedBuildInfo = new FailedBuildInfo(mySBuild, 1000);
+    journal.recordTracked(failedBuildInfo);
+    failedBuildInfo.addProcessedTestRuns(Arrays.asList(mockTestRun(1), mockTestRun(2)));
+    failedBuildInfo.processed = 2;
+    journal.recordProgress(failedBuildInfo);
+    failedBuildInfo.addProcessedTestRuns(Arrays.asList(mockTestRun(2), mockTestRun(3)));
+    journal.recordProgress(failedBuildInfo);
+    journal.close();
+
+    List<PendingBuild> pendingBuilds = new ArrayList<>(new PendingBuildsJournal(myFile).load());
+
+    Assert.assertEquals(pendingBuilds.size(), 1);
+    PendingBuild pendingBuild = pendingBuilds.get(0);
+    Assert.assertEquals(pendingBuild.getBuildId(), 239L);
+    Assert.assertEquals(pendingBuild.getFailureTime(), 1000L);
+    Assert.assertEquals(pendingBuild.getTests().size(), 3);
+    Assert.assertTrue(pendingBuild.getTests().contains(1));
+    Assert.assertTrue(pendingBuild.getTests().contains(2));
+    Assert.assertTrue(pendingBuild.getTests().contains(3));
+    Assert.assertEquals(pendingBuild.getProcessed(), 2);
+  }
+
+  public void Test_PendingWorkIsRestored() {
+    PendingBuildsJournal journal = new PendingBuildsJournal(myFile);
+    journal.open(Collections.emptyList());
+    FailedBuildInfo failedBuildInfo = new FailedBuildInfo(mySBuild, 1000);
+    journal.recordTracked(failedBuildInfo);
+    failedBuildInfo.addProcessedTestRuns(Arrays.asList(mockTestRun(1), mockTestRun(2)));
+    failedBuildInfo.setPendingWork(Collections.emptyList(), Arrays.asList(mockTestRun(1), mockTestRun(2)), 2);
+    journal.recordProgress(failedBuildInfo);
+    failedBuildInfo.setPendingWork(Collections.emptyList(), Collections.singletonList(mockTestRun(2)), 3);
+    journal.recordProgress(failedBuildInfo);
+    journal.close();
+
+    PendingBuild pendingBuild = new PendingBuildsJournal(myFile).load().iterator().next();
+
+    Assert.assertEquals(pendingBuild.getPendingTests().size(), 1);
+    Assert.assertTrue(pendingBuild.getPendingTests().contains(2));
+    Assert.assertTrue(pendingBuild.getPendingBuildProblems().isEmpty());
+    Assert.assertEquals(pendingBuild.getNextHeuristic(), 3);
+  }
+
+  public void Test_ClearedPendingWorkIsNotRestored() {
+    PendingBuildsJournal journal = new PendingBuildsJournal(myFile);
+    journal.open(Collections.emptyList());
+    FailedBuildInfo failedBuildInfo = new FailedBuildInfo(mySBuild, 1000);
+    journal.recordTracked(failedBuildInfo);
+    failedBuildInfo.setPendingWork(Collections.emptyList(), Collections.singletonList(mockTestRun(1)), 1);
+    journal.recordProgress(failedBuildInfo);
+    failedBuildInfo.clearPendingWork();
+    journal.recordProgress(failedBuildInfo);
+    journal.close();
+
+    PendingBuild pendingBuild = new PendingBuildsJournal(myFile).load().iterator().next();
+
+    Assert.assertTrue(pendingBuild.getPendingTests().isEmpty());
+    Assert.assertEquals(pendingBuild.getNextHeuristic(), 0);
+  }
+
+  public void Test_JournalIsCompactedWhileOpen() {
+    PendingBuildsJournal journal = new PendingBuildsJournal(myFile);
+    journal.open(Collections.emptyList());
+    for (int i = 0; i < 50_000; i++) {
+      journal.recordTracked(new FailedBuildInfo(mySBuild, i));
+      journal.recordRemoved(239L);
+    }
+    FailedBuildInfo failedBuildInfo = new FailedBuildInfo(mySBuild, 1000);
+    journal.recordTracked(failedBuildInfo);
+    failedBuildInfo.addProcessedTestRuns(Collections.singletonList(mockTestRun(1)));
+    failedBuildInfo.processed = 1;
+    journal.recordProgress(failedBuildInfo);
+    journal.compactIfNeeded(Collections.singletonList(failedBuildInfo));
+    journal.close();
+
+    Assert.assertTrue(myFile.length() < 1024 * 1024);
+    List<PendingBuild> pendingBuilds = new ArrayList<>(new PendingBuildsJournal(myFile).load());
+    Assert.assertEquals(pendingBuilds.size(), 1);
+    Assert.assertEquals(pendingBuilds.get(0).getFailureTime(), 1000L);
+    Assert.assertTrue(pendingBuilds.get(0).getTests().contains(1));
+    Assert.assertEquals(pendingBuilds.get(0).getProcessed(), 1);
+  }
+
+  public void Test_RemovedBuildIsNotRestored() {
+    PendingBuildsJournal journal = new PendingBuildsJournal(myFile);
+    journal.open(Collections.emptyList());
+    journal.recordTracked(new FailedBuildInfo(mySBuild, 1000));
+    journal.recordRemoved(239L);
+    journal.close();
+
+    Assert.assertTrue(new PendingBuildsJournal(myFile).load().isEmpty());
+  }
+
+  public void Test_UnchangedCounterIsNotAppended() {
+    PendingBuildsJournal journal = new PendingBuildsJournal(myFile);
+    FailedBuildInfo failedBuildInfo = new FailedBuildInfo(mySBuild, 1000);
+    failedBuildInfo.processed = 1;
+    journal.open(Collections.singletonList(failedBuildInfo));
+    long compactedLength = myFile.length();
+
+    journal.recordProgress(failedBuildInfo);
+    journal.close();
+
+    Assert.assertEquals(myFile.length(), compactedLength);
+    Assert.assertEquals(new PendingBuildsJournal(myFile).load().iterator().next().getProcessed(), 1);
+  }
+
+  public void Test_TornRecordIsIgnored() throws Exception {
+    PendingBuildsJournal journal = new PendingBuildsJournal(myFile);
+    journal.open(Collections.emptyList());
+    journal.recordTracked(new FailedBuildInfo(mySBuild, 1000));
+    journal.close();
+    try (FileOutputStream output = new FileOutputStream(myFile, true)) {
+      output.write(new byte[]{2, 0, 0});
+    }
+
+    Assert.assertEquals(new PendingBuildsJournal(myFile).load().size(), 1);
+  }
+
+  private static STestRun mockTestRun(final int testRunId) {
+    STestRun testRun = Mockito.mock(STestRun.class);
+    when(testRun.getTestRunId()).thenReturn(testRunId);
+    return testRun;
+  }
+}
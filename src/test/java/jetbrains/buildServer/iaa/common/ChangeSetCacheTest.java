@@ -0,0 +1,107 @@
+/*
+ * Copyright 2000-2018 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package jetbrains.buildServer.iaa.common;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import jetbrains.buildServer.BaseTestCase;
+import jetbrains.buildServer.serverSide.BuildPromotionEx;
+import jetbrains.buildServer.serverSide.ChangeDescriptor;
+import jetbrains.buildServer.serverSide.SBuild;
+import jetbrains.buildServer.users.UserSet;
+import jetbrains.buildServer.vcs.SVcsModification;
+import jetbrains.buildServer.vcs.SelectPrevBuildPolicy;
+import org.mockito.Mockito;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import static org.mockito.Mockito.when;
+
+@Test
+public class ChangeSetCacheTest extends BaseTestCase {
+
+  public void Test_BuildsWithSameChangesShareModifications() {
+    ChangeSetCache cache = new ChangeSetCache(10);
+    SBuild sBuild = mockBuild(false, 1, 2);
+    SBuild sBuild2 = mockBuild(false, 2, 1);
+
+    List<BuildChanges.Modification> modifications = new BuildChanges(cache).getModifications(sBuild);
+    Assert.assertEquals(modifications.size(), 2);
+    Assert.assertSame(new BuildChanges(cache).getModifications(sBuild2), modifications);
+    Assert.assertNotSame(new BuildChanges(cache).getModifications(mockBuild(false, 1, 3)), modifications);
+  }
+
+  public void Test_ChangesAreDetectedOncePerBuild() {
+    ChangeSetCache cache = new ChangeSetCache(10);
+    SBuild sBuild = mockBuild(false, 1, 2);
+
+    new BuildChanges(cache).getModifications(sBuild);
+
+    Mockito.verify((BuildPromotionEx)sBuild.getBuildPromotion(), Mockito.times(1))
+           .getDetectedChanges(SelectPrevBuildPolicy.SINCE_LAST_BUILD, true);
+  }
+
+  public void Test_CommittersDoNotComputeModifications() {
+    ChangeSetCache cache = new ChangeSetCache(10);
+    SBuild sBuild = mockBuild(false, 1, 2);
+    when(sBuild.getCommitters(SelectPrevBuildPolicy.SINCE_LAST_BUILD)).thenReturn(Mockito.mock(UserSet.class));
+
+    BuildChanges buildChanges = new BuildChanges(cache);
+    buildChanges.getCommitters(sBuild);
+
+    Assert.assertNull(buildChanges.getLoadedModifications());
+    Assert.assertNotNull(buildChanges.getLoadedCommitters());
+  }
+
+  public void Test_PersonalBuildsAreNotShared() {
+    ChangeSetCache cache = new ChangeSetCache(10);
+    SBuild sBuild = mockBuild(true, 1, 2);
+
+    List<BuildChanges.Modification> modifications = new BuildChanges(cache).getModifications(sBuild);
+    Assert.assertNotSame(new BuildChanges(cache).getModifications(sBuild), modifications);
+  }
+
+  public void Test_EldestChangeSetIsEvicted() {
+    ChangeSetCache cache = new ChangeSetCache(1);
+    SBuild sBuild = mockBuild(false, 1);
+
+    List<BuildChanges.Modification> modifications = new BuildChanges(cache).getModifications(sBuild);
+    new BuildChanges(cache).getModifications(mockBuild(false, 2));
+    Assert.assertNotSame(new BuildChanges(cache).getModifications(sBuild), modifications);
+  }
+
+  private static SBuild mockBuild(final boolean personal, final long... changeIds) {
+    SBuild sBuild = Mockito.mock(SBuild.class);
+    BuildPromotionEx buildPromotion = Mockito.mock(BuildPromotionEx.class);
+    when(sBuild.isPersonal()).thenReturn(personal);
+    when(sBuild.getBuildPromotion()).thenReturn(buildPromotion);
+
+    ChangeDescriptor[] descriptors = new ChangeDescriptor[changeIds.length];
+    for (int i = 0; i < changeIds.length; i++) {
+      SVcsModification vcsChange = Mockito.mock(SVcsModification.class);
+      when(vcsChange.getId()).thenReturn(changeIds[i]);
+      when(vcsChange.getChanges()).thenReturn(Collections.emptyList());
+      descriptors[i] = Mockito.mock(ChangeDescriptor.class);
+      when(descriptors[i].getRelatedVcsChange()).thenReturn(vcsChange);
+    }
+    when(buildPromotion.getDetectedChanges(SelectPrevBuildPolicy.SINCE_LAST_BUILD, true))
+      .thenReturn(Arrays.asList(descriptors));
+    return sBuild;
+  }
+}
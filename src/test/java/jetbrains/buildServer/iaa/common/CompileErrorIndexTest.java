@@ -0,0 +1,121 @@
+/*
+ * Copyright 2000-2018 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package jetbrains.buildServer.iaa.common;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import jetbrains.buildServer.BaseTestCase;
+import jetbrains.buildServer.BuildProblemData;
+import jetbrains.buildServer.BuildProblemTypes;
+import jetbrains.buildServer.messages.DefaultMessagesInfo;
+import jetbrains.buildServer.messages.Status;
+import jetbrains.buildServer.serverSide.BuildEx;
+import jetbrains.buildServer.serverSide.buildLog.BlockLogMessage;
+import jetbrains.buildServer.serverSide.buildLog.BuildLog;
+import jetbrains.buildServer.serverSide.buildLog.LogMessage;
+import jetbrains.buildServer.serverSide.problems.BuildProblem;
+import org.mockito.Mockito;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.mockito.Mockito.when;
+
+@Test
+public class CompileErrorIndexTest extends BaseTestCase {
+  private BuildEx mySBuild;
+  private BuildLog myBuildLog;
+  private BlockLogMessage myCompileBlock;
+
+  @BeforeMethod
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    mySBuild = Mockito.mock(BuildEx.class);
+    myBuildLog = Mockito.mock(BuildLog.class);
+    when(mySBuild.isFinished()).thenReturn(true);
+    when(mySBuild.getBuildLog()).thenReturn(myBuildLog);
+    myCompileBlock = mockBlock(1, DefaultMessagesInfo.BLOCK_TYPE_COMPILATION);
+    BuildProblem problem = Mockito.mock(BuildProblem.class);
+    when(problem.getBuildProblemData()).thenReturn(
+      BuildProblemData.createBuildProblem("id", BuildProblemTypes.TC_COMPILATION_ERROR_TYPE, "description",
+                                          "compileBlockIndex=1"));
+    when(mySBuild.getBuildProblems()).thenReturn(Collections.singletonList(problem));
+  }
+
+  public void Test_ErrorsOfCompileBlockAreCollected() {
+    BlockLogMessage otherBlock = mockBlock(3, "other");
+    mockLog(myCompileBlock,
+            mockMessage(2, myCompileBlock, Status.ERROR, "error"),
+            mockMessage(3, otherBlock, Status.ERROR, "not a compile error"));
+
+    List<String> errors = new CompileErrorIndex().getCompileErrors(mySBuild, 1);
+
+    Assert.assertEquals(errors, Collections.singletonList("error"));
+  }
+
+  public void Test_LogIsNotReadAfterLastCompileBlock() {
+    LogMessage after = mockMessage(3, null, Status.NORMAL, "after");
+    LogMessage rest = mockMessage(4, null, Status.ERROR, "rest");
+    mockLog(myCompileBlock, mockMessage(2, myCompileBlock, Status.ERROR, "error"), after, rest);
+
+    new CompileErrorIndex().getCompileErrors(mySBuild, 1);
+
+    Mockito.verify(rest, Mockito.never()).getStatus();
+  }
+
+  public void Test_RetainedErrorsAreLimited() {
+    LogMessage[] messages = new LogMessage[CompileErrorIndex.MAX_ERRORS_PER_BLOCK + 2];
+    messages[0] = myCompileBlock;
+    char[] longText = new char[CompileErrorIndex.MAX_ERROR_LENGTH * 2];
+    Arrays.fill(longText, 'a');
+    for (int i = 1; i < messages.length; i++) {
+      messages[i] = mockMessage(i + 1, myCompileBlock, Status.ERROR, new String(longText));
+    }
+    mockLog(messages);
+
+    List<String> errors = new CompileErrorIndex().getCompileErrors(mySBuild, 1);
+
+    Assert.assertEquals(errors.size(), CompileErrorIndex.MAX_ERRORS_PER_BLOCK);
+    Assert.assertEquals(errors.get(0).length(), CompileErrorIndex.MAX_ERROR_LENGTH);
+  }
+
+  private void mockLog(LogMessage... messages) {
+    Iterator<LogMessage> iterator = Arrays.asList(messages).iterator();
+    when(myBuildLog.getMessagesIterator()).thenReturn(iterator);
+  }
+
+  private static BlockLogMessage mockBlock(int index, String blockType) {
+    BlockLogMessage block = Mockito.mock(BlockLogMessage.class);
+    when(block.getIndex()).thenReturn(index);
+    when(block.getBlockType()).thenReturn(blockType);
+    when(block.getStatus()).thenReturn(Status.NORMAL);
+    return block;
+  }
+
+  private static LogMessage mockMessage(int index, BlockLogMessage parent, Status status, String text) {
+    LogMessage message = Mockito.mock(LogMessage.class);
+    when(message.getIndex()).thenReturn(index);
+    when(message.getParent()).thenReturn(parent);
+    when(message.getStatus()).thenReturn(status);
+    when(message.getText()).thenReturn(text);
+    return message;
+  }
+}
@@ -158,4 +158,44 @@ public class BrokenFileHeuristicTest extends BaseTestCase {
     result = myHeuristic.findResponsibleUser(myHeuristicContext);
     Assert.assertTrue(result.isEmpty());
   }
+
+  public void TestStackTraceFrameMatchesChangedFile() {
+    when(myProblemTextExtractor.getBuildProblemText(any())).thenReturn("java.lang.AssertionError\n" +
+                                                                       "\tat path4.filename4.test(filename4.java:12)");
+    when(myVcsModification.getCommitters()).thenReturn(Collections.singletonList(mySecondUser));
+    when(myVcsModification2.getCommitters()).thenReturn(Collections.singletonList(myUser));
+
+    HeuristicResult heuristicResult = myHeuristic.findResponsibleUser(myHeuristicContext);
+
+    Assert.assertFalse(heuristicResult.isEmpty());
+    Responsibility responsibility = heuristicResult.getResponsibility(mySTestRun);
+    assert responsibility != null;
+    Assert.assertEquals(responsibility.getUser(), myUser);
+  }
+
+  public void TestStackTraceFramesTakePrecedenceOverMentionedFiles() {
+    when(myProblemTextExtractor.getBuildProblemText(any())).thenReturn("I contain ./path1/path1/path1/filename\n" +
+                                                                       "\tat path4.filename4.test(filename4.java:12)");
+    when(myVcsModification.getCommitters()).thenReturn(Collections.singletonList(mySecondUser));
+    when(myVcsModification2.getCommitters()).thenReturn(Collections.singletonList(myUser));
+
+    HeuristicResult heuristicResult = myHeuristic.findResponsibleUser(myHeuristicContext);
+
+    Responsibility responsibility = heuristicResult.getResponsibility(mySTestRun);
+    assert responsibility != null;
+    Assert.assertEquals(responsibility.getUser(), myUser);
+  }
+
+  public void TestMentionedFilesMatchWhenNoFrameIsChanged() {
+    when(myProblemTextExtractor.getBuildProblemText(any())).thenReturn("I contain ./path1/path1/path1/filename\n" +
+                                                                       "\tat other.Unrelated.test(Unrelated.java:12)");
+    when(myVcsModification.getCommitters()).thenReturn(Collections.singletonList(myUser));
+    when(myVcsModification2.getCommitters()).thenReturn(Collections.emptyList());
+
+    HeuristicResult heuristicResult = myHeuristic.findResponsibleUser(myHeuristicContext);
+
+    Responsibility responsibility = heuristicResult.getResponsibility(mySTestRun);
+    assert responsibility != null;
+    Assert.assertEquals(responsibility.getUser(), myUser);
+  }
 }
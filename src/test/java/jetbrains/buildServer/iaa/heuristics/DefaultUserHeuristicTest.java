@@ -86,6 +86,23 @@ public class DefaultUserHeuristicTest extends BaseTestCase {
     Assert.assertTrue(heuristicResult.isEmpty());
   }
 
+  public void TestIsApplicableOnlyWithResponsible() {
+    Assert.assertFalse(myHeuristic.isApplicable(myHeuristicContext));
+
+    myBuildFeatureParams.put(Constants.DEFAULT_RESPONSIBLE, "");
+    Assert.assertFalse(myHeuristic.isApplicable(myHeuristicContext));
+
+    myBuildFeatureParams.put(Constants.DEFAULT_RESPONSIBLE, USER_NAME);
+    Assert.assertTrue(myHeuristic.isApplicable(myHeuristicContext));
+  }
+
+  public void TestMissingResponsibleIsNotLookedUp() {
+    HeuristicResult heuristicResult = myHeuristic.findResponsibleUser(myHeuristicContext);
+
+    Assert.assertTrue(heuristicResult.isEmpty());
+    Mockito.verify(myUserModelEx, Mockito.never()).findUserAccount(Mockito.any(), Mockito.anyString());
+  }
+
   public void TestResponsibleNotFound() {
     myBuildFeatureParams.put(Constants.DEFAULT_RESPONSIBLE, USER_NAME);
     when(myUserModelEx.findUserAccount(null, USER_NAME)).thenReturn(null);
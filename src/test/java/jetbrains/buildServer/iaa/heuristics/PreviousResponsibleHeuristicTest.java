@@ -64,7 +64,6 @@ public class PreviousResponsibleHeuristicTest extends BaseTestCase {
     when(myBuildProblem.getBuildProblemData()).thenReturn(buildProblemData);
     when(buildProblemData.getType()).thenReturn("Type");
     when(mySBuild.getFullName()).thenReturn("Full SBuild Name");
-    when(myInvestigationsManager.findPreviousResponsible(mySProject, mySBuild, myBuildProblem)).thenReturn(myUser);
     when(mySBuild.getBuildType()).thenReturn(sBuildType);
     when(sBuildType.getProject()).thenReturn(mySProject);
     when(mySTest.getTestNameId()).thenReturn(12982318457L);
@@ -78,7 +77,10 @@ public class PreviousResponsibleHeuristicTest extends BaseTestCase {
   }
 
   public void TestBuildProblemInfo_ResponsibleFound() {
-    when(myInvestigationsManager.findPreviousResponsible(mySProject, mySBuild, myBuildProblem)).thenReturn(myUser);
+    when(myBuildProblem.getId()).thenReturn(42);
+    when(myInvestigationsManager.findPreviousResponsible(mySProject, mySBuild,
+                                                         Collections.singletonList(myBuildProblem)))
+      .thenReturn(Collections.singletonMap(42, myUser));
 
     HeuristicResult result = myHeuristic.findResponsibleUser(myBuildHeuristicContext);
 
@@ -89,7 +91,9 @@ public class PreviousResponsibleHeuristicTest extends BaseTestCase {
   }
 
   public void TestBuildProblemInfo_ResponsibleNotFound() {
-    when(myInvestigationsManager.findPreviousResponsible(mySProject, mySBuild, myBuildProblem)).thenReturn(null);
+    when(myInvestigationsManager.findPreviousResponsible(mySProject, mySBuild,
+                                                         Collections.singletonList(myBuildProblem)))
+      .thenReturn(Collections.emptyMap());
 
     HeuristicResult result = myHeuristic.findResponsibleUser(myBuildHeuristicContext);
 //
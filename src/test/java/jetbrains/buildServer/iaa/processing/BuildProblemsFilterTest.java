@@ -37,6 +37,8 @@ import org.testng.Assert;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.when;
 
 @Test
@@ -79,7 +81,7 @@ public class BuildProblemsFilterTest extends BaseTestCase {
     when(myBuildProblem.getBuildProblemData()).thenReturn(myBuildProblemData);
     when(myBuildProblemData.getType()).thenReturn(Constants.TC_COMPILATION_ERROR_TYPE);
     when(myBuildProblem.isMuted()).thenReturn(false);
-    when(myBuildProblemUtils.isNew(myBuildProblem)).thenReturn(true);
+    when(myBuildProblemUtils.isNew(eq(myBuildProblem), any())).thenReturn(true);
     when(myBuildProblem.getAllResponsibilities())
       .thenReturn(Arrays.asList(myResponsibilityEntry, responsibilityEntry2));
     when(myInvestigationsManager.checkUnderInvestigation(mySProject, mySBuild, myBuildProblem)).thenReturn(false);
@@ -94,7 +96,7 @@ public class BuildProblemsFilterTest extends BaseTestCase {
     when(myBuildProblem.isMuted()).thenReturn(true);
 
     List<BuildProblem> applicableBuildProblems =
-      myBuildProblemsFilter.apply(myFailedBuildInfo, mySProject, myBuildProblemWrapper);
+      myBuildProblemsFilter.apply(myFailedBuildInfo, mySBuild, mySProject, myBuildProblemWrapper);
 
     Assert.assertEquals(applicableBuildProblems.size(), 0);
   }
@@ -103,25 +105,25 @@ public class BuildProblemsFilterTest extends BaseTestCase {
     when(myBuildProblem.isMuted()).thenReturn(false);
 
     List<BuildProblem> applicableBuildProblems =
-      myBuildProblemsFilter.apply(myFailedBuildInfo, mySProject, myBuildProblemWrapper);
+      myBuildProblemsFilter.apply(myFailedBuildInfo, mySBuild, mySProject, myBuildProblemWrapper);
 
     Assert.assertEquals(applicableBuildProblems.size(), 1);
   }
 
   public void Test_BuildProblemNotNew() {
-    when(myBuildProblemUtils.isNew(myBuildProblem)).thenReturn(false);
+    when(myBuildProblemUtils.isNew(eq(myBuildProblem), any())).thenReturn(false);
 
     List<BuildProblem> applicableBuildProblems =
-      myBuildProblemsFilter.apply(myFailedBuildInfo, mySProject, myBuildProblemWrapper);
+      myBuildProblemsFilter.apply(myFailedBuildInfo, mySBuild, mySProject, myBuildProblemWrapper);
 
     Assert.assertEquals(applicableBuildProblems.size(), 0);
   }
 
   public void Test_BuildProblemIsNew() {
-    when(myBuildProblemUtils.isNew(myBuildProblem)).thenReturn(true);
+    when(myBuildProblemUtils.isNew(eq(myBuildProblem), any())).thenReturn(true);
 
     List<BuildProblem> applicableBuildProblems =
-      myBuildProblemsFilter.apply(myFailedBuildInfo, mySProject, myBuildProblemWrapper);
+      myBuildProblemsFilter.apply(myFailedBuildInfo, mySBuild, mySProject, myBuildProblemWrapper);
 
     Assert.assertEquals(applicableBuildProblems.size(), 1);
   }
@@ -131,7 +133,7 @@ public class BuildProblemsFilterTest extends BaseTestCase {
     when(myResponsibilityEntry.getProject()).thenReturn(mySProject);
 
     List<BuildProblem> applicableBuildProblems =
-      myBuildProblemsFilter.apply(myFailedBuildInfo, mySProject, myBuildProblemWrapper);
+      myBuildProblemsFilter.apply(myFailedBuildInfo, mySBuild, mySProject, myBuildProblemWrapper);
 
     Assert.assertEquals(applicableBuildProblems.size(), 0);
   }
@@ -141,7 +143,7 @@ public class BuildProblemsFilterTest extends BaseTestCase {
     when(myResponsibilityEntry.getProject()).thenReturn(mySProject);
 
     List<BuildProblem> applicableBuildProblems =
-      myBuildProblemsFilter.apply(myFailedBuildInfo, mySProject, myBuildProblemWrapper);
+      myBuildProblemsFilter.apply(myFailedBuildInfo, mySBuild, mySProject, myBuildProblemWrapper);
 
     Assert.assertEquals(applicableBuildProblems.size(), 1);
   }
@@ -150,7 +152,7 @@ public class BuildProblemsFilterTest extends BaseTestCase {
     when(myBuildProblemData.getType()).thenReturn("Incompatible Type");
 
     List<BuildProblem> applicableBuildProblems =
-      myBuildProblemsFilter.apply(myFailedBuildInfo, mySProject, myBuildProblemWrapper);
+      myBuildProblemsFilter.apply(myFailedBuildInfo, mySBuild, mySProject, myBuildProblemWrapper);
 
     Assert.assertEquals(applicableBuildProblems.size(), 0);
   }
@@ -159,7 +161,7 @@ public class BuildProblemsFilterTest extends BaseTestCase {
     when(myBuildProblemData.getType()).thenReturn(Constants.TC_COMPILATION_ERROR_TYPE);
 
     List<BuildProblem> applicableBuildProblems =
-      myBuildProblemsFilter.apply(myFailedBuildInfo, mySProject, myBuildProblemWrapper);
+      myBuildProblemsFilter.apply(myFailedBuildInfo, mySBuild, mySProject, myBuildProblemWrapper);
 
     Assert.assertEquals(applicableBuildProblems.size(), 1);
   }
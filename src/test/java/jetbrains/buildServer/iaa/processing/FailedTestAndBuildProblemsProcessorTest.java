@@ -14,192 +14,186 @@
 // * limitations under the License.
 // */
 //
-//package jetbrains.buildServer.iaa.processing;
-//
-//import jetbrains.buildServer.BaseTestCase;
-//import jetbrains.buildServer.BuildProblemData;
-//import jetbrains.buildServer.iaa.common.HeuristicResult;
-//import jetbrains.buildServer.iaa.common.Responsibility;
-//import jetbrains.buildServer.iaa.processing.FailedTestAndBuildProblemsProcessor;
-//import jetbrains.buildServer.iaa.processing.ResponsibleUserFinder;
-//import jetbrains.buildServer.responsibility.BuildProblemResponsibilityFacade;
-//import jetbrains.buildServer.responsibility.TestNameResponsibilityFacade;
-//import jetbrains.buildServer.serverSide.*;
-//import jetbrains.buildServer.serverSide.impl.problems.BuildProblemImpl;
-//import jetbrains.buildServer.serverSide.problems.BuildProblemInfo;
-//import jetbrains.buildServer.tests.TestName;
-//import jetbrains.buildServer.users.SUser;
-//import org.mockito.Mockito;
-//import org.testng.Assert;
-//import org.testng.annotations.BeforeMethod;
-//import org.testng.annotations.Test;
-//
-//import static org.mockito.ArgumentMatchers.*;
-//import static org.mockito.Mockito.when;
-//
-//@Test
-//public class FailedTestAndBuildProblemsProcessorTest extends BaseTestCase {
-//  private FailedTestAndBuildProblemsProcessor myProcessor;
-//  private TestNameResponsibilityFacade myTestNameResponsibilityFacade;
-//  private BuildProblemResponsibilityFacade myBuildProblemResponsibilityFacade;
-//  private ResponsibleUserFinder myResponsibleUserFinder;
-//  private BuildApplicabilityChecker myBuildApplicabilityChecker;
-//  private SRunningBuild mySRunningBuild;
-//  private SBuild mySBuild;
-//  private STestRun mySTestRun;
-//  private SBuildType mySBuildType;
-//  private BuildProblemImpl myBuildProblem;
-//  private TestApplicabilityChecker myTestApplicabilityChecker;
-//
-//  @BeforeMethod
-//  @Override
-//  protected void setUp() throws Exception {
-//    super.setUp();
-//    myTestNameResponsibilityFacade = Mockito.mock(TestNameResponsibilityFacade.class);
-//    myBuildProblemResponsibilityFacade = Mockito.mock(BuildProblemResponsibilityFacade.class);
-//    myResponsibleUserFinder = Mockito.mock(ResponsibleUserFinder.class);
-//    my = Mockito.mock(BuildApplicabilityChecker.class);
-//    myTestApplicabilityChecker = Mockito.mock(TestApplicabilityChecker.class);
-//    myProcessor = new FailedTestAndBuildProblemsProcessor(myTestNameResponsibilityFacade,
-//                                                          myBuildProblemResponsibilityFacade,
-//                                                          myResponsibleUserFinder,
-//                                                          myBuildApplicabilityChecker,
-//                                                          myTestApplicabilityChecker);
-//    final HeuristicResult heuristicsResult = new HeuristicResult();
-//    when(myResponsibleUserFinder.findResponsibleUser(any(), anyList(), anyList())).thenReturn(heuristicsResult);
-//    mySRunningBuild = Mockito.mock(SRunningBuild.class);
-//    mySBuild = Mockito.mock(SBuild.class);
-//    myBuildProblem = Mockito.mock(BuildProblemImpl.class);
-//    BuildProblemData buildProblemData = Mockito.mock(BuildProblemData.class);
-//    mySTestRun = Mockito.mock(STestRun.class);
-//    mySBuildType = Mockito.mock(SBuildType.class);
-//    SProject sProject = Mockito.mock(SProject.class);
-//    final STest STest = Mockito.mock(jetbrains.buildServer.serverSide.STest.class);
-//    TestName testName = Mockito.mock(TestName.class);
-//
-//    when(mySRunningBuild.getBuildType()).thenReturn(mySBuildType);
-//    when(mySBuild.getBuildType()).thenReturn(mySBuildType);
-//    when(mySBuildType.getProject()).thenReturn(sProject);
-//    when(sProject.getProjectId()).thenReturn("projectId");
-//    when(mySTestRun.getTest()).thenReturn(STest);
-//    when(mySTestRun.getFullText()).thenReturn("Full Text Test Run");
-//    when(STest.getName()).thenReturn(testName);
-//    when(myBuildApplicabilityChecker.isApplicable(any(), any(), any())).thenReturn(true);
-//    when(testName.getAsString()).thenReturn("Test Name as String");
-//    //when(myResponsibleUserFinder.findResponsibleUser(any()));
-//    when(myBuildProblem.getBuildProblemData()).thenReturn(buildProblemData);
-//    when(buildProblemData.getType()).thenReturn("1234");
-//  }
-//
-//  public void Test_OnTestFailed_BuildTypeIsNull() {
-//    when(mySRunningBuild.getBuildType()).thenReturn(null);
-//
-//    //myProcessor.processFailedTest(mySBuild,
-//    //                              Collections.singletonList(myBuildProblem),
-//    //                              Collections.singletonList(mySTestRun));
-//    Assert.fail();
-//    Mockito.verify(mySTestRun, Mockito.never()).getTest();
-//  }
-//
-//  public void Test_OnTestFailed_BuildTypeNotNull() {
-//    SUser sUser = Mockito.mock(SUser.class);
-//    when(mySRunningBuild.getBuildType()).thenReturn(mySBuildType);
-//    HeuristicResult heuristicResult = new HeuristicResult();
-//    when(myResponsibleUserFinder.findResponsibleUser(any(), anyList(), anyList())).thenReturn(heuristicResult);
-//    heuristicResult.addResponsibility(mySTestRun, new Responsibility(sUser, "some text"));
-//    //
-//    //myProcessor.processFailedTest(mySBuild,
-//    //                              Collections.singletonList(myBuildProblem),
-//    //                              Collections.singletonList(mySTestRun));
-//    Assert.fail();
-//    Mockito.verify(mySTestRun, Mockito.atLeastOnce()).getTest();
-//  }
-//
-//  public void Test_OnTestFailed_ResponsibleUserNotFound() {
-//    HeuristicResult emptyHeuristicResult = new HeuristicResult();
-//    when(myResponsibleUserFinder.findResponsibleUser(any(), anyList(), anyList())).thenReturn(emptyHeuristicResult);
-//
-//    //myProcessor.processFailedTest(mySBuild,
-//    //                              Collections.singletonList(myBuildProblem),
-//    //                              Collections.singletonList(mySTestRun));
-//    Assert.fail();
-//
-//    Mockito.verify(myTestNameResponsibilityFacade, Mockito.never())
-//           .setTestNameResponsibility(any(TestName.class), anyString(), any());
-//  }
-//
-//  public void Test_OnTestFailed_ResponsibleUserFound() {
-//    SUser sUser = Mockito.mock(SUser.class);
-//    HeuristicResult heuristicResult = new HeuristicResult();
-//    heuristicResult.addResponsibility(mySTestRun, new Responsibility(sUser, "Failed description"));
-//    when(myResponsibleUserFinder.findResponsibleUser(any(), anyList(), anyList())).thenReturn(heuristicResult);
-//
-//    //myProcessor.processFailedTest(mySBuild,
-//    //                              Collections.singletonList(myBuildProblem),
-//    //                              Collections.singletonList(mySTestRun));
-//    Assert.fail();
-//
-//    Mockito.verify(myTestNameResponsibilityFacade, Mockito.atLeastOnce())
-//           .setTestNameResponsibility(any(TestName.class), any(), any());
-//  }
-//
-//  public void Test_BuildProblemOccurred_BuildTypeIsNull() {
-//    when(mySBuild.getBuildType()).thenReturn(null);
-//
-//    //myProcessor.onBuildProblemOccurred(mySBuild, myBuildProblem);
-//    Assert.fail();
-//
-//    Mockito.verify(myBuildApplicabilityChecker, Mockito.never()).isApplicable(any(), any(), any());
-//  }
-//
-//  public void Test_BuildProblemOccurred_BuildTypeNotNull() {
-//    when(mySBuild.getBuildType()).thenReturn(mySBuildType);
-//
-//    //myProcessor.onBuildProblemOccurred(mySBuild, myBuildProblem);
-//    Assert.fail();
-//
-//    Mockito.verify(myBuildApplicabilityChecker, Mockito.atLeastOnce()).isApplicable(any(), any(), any());
-//  }
-//
-//  public void Test_BuildProblemOccurred_ApplicabilityFailed() {
-//    when(myBuildApplicabilityChecker.isApplicable(any(), any(), any())).thenReturn(false);
-//
-//    //myProcessor.onBuildProblemOccurred(mySBuild, myBuildProblem);
-//    Assert.fail();
-//
-//    Mockito.verify(myResponsibleUserFinder, Mockito.never()).findResponsibleUser(any(), anyList(), anyList());
-//  }
-//
-//  public void Test_BuildProblemOccurred_ApplicabilitySucceed() {
-//    when(myBuildApplicabilityChecker.isApplicable(any(), any(), any())).thenReturn(true);
-//
-//    //myProcessor.onBuildProblemOccurred(mySBuild, myBuildProblem);
-//    Assert.fail();
-//
-//    Mockito.verify(myResponsibleUserFinder, Mockito.atLeastOnce()).findResponsibleUser(any(), anyList(), anyList());
-//  }
-//
-//  public void Test_BuildProblemOccurred_ResponsibleUserNotFound() {
-//    HeuristicResult emptyHeuristicResult = new HeuristicResult();
-//    when(myResponsibleUserFinder.findResponsibleUser(any(), anyList(), anyList())).thenReturn(emptyHeuristicResult);
-//
-//    //myProcessor.onBuildProblemOccurred(mySBuild, myBuildProblem);
-//    Assert.fail();
-//
-//    Mockito.verify(myTestNameResponsibilityFacade, Mockito.never())
-//           .setTestNameResponsibility(any(TestName.class), anyString(), any());
-//  }
-//
-//  public void Test_BuildProblemOccurred_ResponsibleUserFound() {
-//    SUser sUser = Mockito.mock(SUser.class);
-//    HeuristicResult heuristicResult = new HeuristicResult();
-//    heuristicResult.addResponsibility(myBuildProblem, new Responsibility(sUser, "Failed description"));
-//    when(myResponsibleUserFinder.findResponsibleUser(any(), anyList(), anyList())).thenReturn(heuristicResult);
-//
-//    //myProcessor.onBuildProblemOccurred(mySBuild, myBuildProblem);
-//    Assert.fail();
-//
-//    Mockito.verify(myBuildProblemResponsibilityFacade, Mockito.atLeastOnce())
-//           .setBuildProblemResponsibility(any(BuildProblemInfo.class), any(), any());
-//  }
-//}
+package jetbrains.buildServer.iaa.processing;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import jetbrains.buildServer.BaseTestCase;
+import jetbrains.buildServer.iaa.common.FailedBuildInfo;
+import jetbrains.buildServer.iaa.common.HeuristicResult;
+import jetbrains.buildServer.iaa.utils.AutoAssignerMetrics;
+import jetbrains.buildServer.iaa.utils.TimeBudget;
+import jetbrains.buildServer.serverSide.*;
+import org.mockito.Mockito;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@Test
+public class FailedTestAndBuildProblemsProcessorTest extends BaseTestCase {
+  private FailedTestAndBuildProblemsProcessor myProcessor;
+  private ResponsibleUserFinder myResponsibleUserFinder;
+  private FailedTestFilter myFailedTestFilter;
+  private BuildProblemsFilter myBuildProblemsFilter;
+  private AutoAssignerMetrics myMetrics;
+  private BuildEx mySBuild;
+  private SProject mySProject;
+  private ShortStatistics myShortStatistics;
+  private List<STestRun> myFailedTests;
+  private FailedBuildInfo myFailedBuildInfo;
+
+  @BeforeMethod
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myResponsibleUserFinder = Mockito.mock(ResponsibleUserFinder.class);
+    myFailedTestFilter = Mockito.mock(FailedTestFilter.class);
+    myBuildProblemsFilter = Mockito.mock(BuildProblemsFilter.class);
+    myMetrics = new AutoAssignerMetrics();
+    myProcessor = new FailedTestAndBuildProblemsProcessor(myResponsibleUserFinder,
+                                                          myFailedTestFilter,
+                                                          Mockito.mock(FailedTestAssigner.class),
+                                                          myBuildProblemsFilter,
+                                                          Mockito.mock(BuildProblemsAssigner.class),
+                                                          myMetrics);
+
+    mySBuild = Mockito.mock(BuildEx.class);
+    SBuildType sBuildType = Mockito.mock(SBuildType.class);
+    mySProject = Mockito.mock(SProject.class);
+    myShortStatistics = Mockito.mock(ShortStatistics.class);
+    BuildStatistics buildStatistics = Mockito.mock(BuildStatistics.class);
+    myFailedTests = new ArrayList<>();
+    when(mySBuild.getBuildId()).thenReturn(239L);
+    when(mySBuild.getBuildType()).thenReturn(sBuildType);
+    when(sBuildType.getProject()).thenReturn(mySProject);
+    when(mySBuild.getBuildOwnParameters()).thenReturn(Collections.emptyMap());
+    when(mySBuild.getBuildProblems()).thenReturn(Collections.emptyList());
+    when(mySBuild.getShortStatistics()).thenReturn(myShortStatistics);
+    when(mySBuild.getBuildStatistics(any())).thenReturn(buildStatistics);
+    when(buildStatistics.getFailedTests()).thenAnswer(invocation -> myFailedTests);
+    when(myBuildProblemsFilter.apply(any(), any(), any(), anyList())).thenReturn(Collections.emptyList());
+    // all tests are applicable
+    when(myFailedTestFilter.apply(any(), any(), any(), anyList())).thenAnswer(invocation -> {
+      List<STestRun> testRuns = new ArrayList<>(invocation.getArgument(3));
+      FailedBuildInfo failedBuildInfo = invocation.getArgument(0);
+      failedBuildInfo.addProcessedTestRuns(testRuns);
+      return testRuns;
+    });
+    when(myResponsibleUserFinder.findResponsibleUser(any(), any(), any(), anyList(), anyList(), any()))
+      .thenAnswer(invocation -> {
+        FailedBuildInfo failedBuildInfo = invocation.getArgument(0);
+        failedBuildInfo.clearPendingWork();
+        return new HeuristicResult();
+      });
+    myFailedBuildInfo = new FailedBuildInfo(mySBuild);
+  }
+
+  public void Test_ApplicableTestsArePendingWhenBudgetIsExceeded() throws InterruptedException {
+    addFailedTests(2);
+    TimeBudget budget = TimeBudget.ofMillis(1);
+    Thread.sleep(5);
+
+    myProcessor.processBuild(myFailedBuildInfo, mySBuild, budget);
+
+    verify(myResponsibleUserFinder, never()).findResponsibleUser(any(), any(), any(), anyList(), anyList(), any());
+    Assert.assertTrue(myFailedBuildInfo.isPending(myFailedTests.get(0)));
+    Assert.assertTrue(myFailedBuildInfo.isPending(myFailedTests.get(1)));
+    Assert.assertEquals(myFailedBuildInfo.getNextHeuristic(), 0);
+    Assert.assertEquals(myMetrics.get(AutoAssignerMetrics.CYCLE_BUDGET_EXCEEDED), 1);
+  }
+
+  public void Test_PendingTestsAreResumedFromNextHeuristic() {
+    addFailedTests(3);
+    myFailedBuildInfo.addProcessedTestRuns(myFailedTests);
+    myFailedBuildInfo.setPendingWork(Collections.emptyList(), Collections.singletonList(myFailedTests.get(1)), 2);
+
+    myProcessor.processBuild(myFailedBuildInfo, mySBuild, TimeBudget.UNLIMITED);
+
+    verify(myResponsibleUserFinder).findResponsibleUser(eq(myFailedBuildInfo), eq(mySBuild), eq(mySProject),
+                                                        eq(Collections.emptyList()),
+                                                        eq(Collections.singletonList(myFailedTests.get(1))),
+                                                        any());
+    Assert.assertFalse(myFailedBuildInfo.hasPendingWork());
+  }
+
+  public void Test_UnfinishedPendingWorkStopsPass() {
+    addFailedTests(1);
+    myFailedBuildInfo.setPendingWork(Collections.emptyList(), myFailedTests, 1);
+    when(myResponsibleUserFinder.findResponsibleUser(any(), any(), any(), anyList(), anyList(), any()))
+      .thenAnswer(invocation -> {
+        myFailedBuildInfo.setPendingWork(Collections.emptyList(), myFailedTests, 2);
+        return new HeuristicResult();
+      });
+
+    myProcessor.processBuild(myFailedBuildInfo, mySBuild, TimeBudget.UNLIMITED);
+
+    verify(myFailedTestFilter, never()).apply(any(), any(), any(), anyList());
+    Assert.assertEquals(myFailedBuildInfo.getNextHeuristic(), 2);
+    Assert.assertEquals(myMetrics.get(AutoAssignerMetrics.BUILD_BUDGET_EXCEEDED), 1);
+  }
+
+  public void Test_StatisticsAreSkippedWhileFailedTestCountIsSame() {
+    addFailedTests(2);
+    when(myShortStatistics.getFailedTestCount()).thenReturn(2);
+    myProcessor.processBuild(myFailedBuildInfo, mySBuild, TimeBudget.UNLIMITED);
+
+    myProcessor.processBuild(myFailedBuildInfo, mySBuild, TimeBudget.UNLIMITED);
+
+    verify(mySBuild, times(1)).getBuildStatistics(any());
+    Assert.assertEquals(myMetrics.get(AutoAssignerMetrics.SKIPPED_STATISTICS), 1);
+  }
+
+  public void Test_StatisticsAreRequestedWhenFailedTestCountChanges() {
+    addFailedTests(2);
+    when(myShortStatistics.getFailedTestCount()).thenReturn(2);
+    myProcessor.processBuild(myFailedBuildInfo, mySBuild, TimeBudget.UNLIMITED);
+    when(myShortStatistics.getFailedTestCount()).thenReturn(3);
+
+    myProcessor.processBuild(myFailedBuildInfo, mySBuild, TimeBudget.UNLIMITED);
+
+    verify(mySBuild, times(2)).getBuildStatistics(any());
+    Assert.assertEquals(myMetrics.get(AutoAssignerMetrics.SKIPPED_STATISTICS), 0);
+  }
+
+  public void Test_FailedTestsAreProcessedInChunks() {
+    addFailedTests(120);
+
+    myProcessor.processBuild(myFailedBuildInfo, mySBuild, TimeBudget.UNLIMITED);
+
+    verify(myFailedTestFilter).apply(any(), any(), any(), eq(myFailedTests.subList(0, 50)));
+    verify(myFailedTestFilter).apply(any(), any(), any(), eq(myFailedTests.subList(50, 100)));
+    verify(myFailedTestFilter).apply(any(), any(), any(), eq(myFailedTests.subList(100, 120)));
+    verify(myResponsibleUserFinder, times(3)).findResponsibleUser(any(), any(), any(), anyList(), anyList(), any());
+  }
+
+  public void Test_ProcessingStopsAtThreshold() {
+    addFailedTests(120);
+    when(myFailedTestFilter.apply(any(), any(), any(), anyList())).thenAnswer(invocation -> {
+      List<STestRun> testRuns = new ArrayList<>(invocation.getArgument(3));
+      myFailedBuildInfo.addProcessedTestRuns(testRuns);
+      myFailedBuildInfo.processed += testRuns.size();
+      return testRuns;
+    });
+
+    myProcessor.processBuild(myFailedBuildInfo, mySBuild, TimeBudget.UNLIMITED);
+
+    verify(myFailedTestFilter, times(2)).apply(any(), any(), any(), anyList());
+  }
+
+  private void addFailedTests(final int count) {
+    for (int i = 0; i < count; i++) {
+      STestRun testRun = Mockito.mock(STestRun.class);
+      when(testRun.getTestRunId()).thenReturn(i);
+      myFailedTests.add(testRun);
+    }
+  }
+}
@@ -34,7 +34,11 @@ import org.testng.Assert;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @Test
@@ -89,7 +93,7 @@ public class FailedTestsFilterTest extends BaseTestCase {
   public void Test_TestRunIsMuted() {
     when(mySTestRun.isMuted()).thenReturn(true);
 
-    List<STestRun> applicableTestRuns = myFailedTestFilter.apply(myFailedBuildInfo, mySProject, myTestsWrapper);
+    List<STestRun> applicableTestRuns = myFailedTestFilter.apply(myFailedBuildInfo, mySBuild, mySProject, myTestsWrapper);
 
     Assert.assertEquals(applicableTestRuns.size(), 0);
   }
@@ -97,7 +101,7 @@ public class FailedTestsFilterTest extends BaseTestCase {
   public void Test_TestRunIsNotMuted() {
     when(mySTestRun.isMuted()).thenReturn(false);
 
-    List<STestRun> applicableTestRuns = myFailedTestFilter.apply(myFailedBuildInfo, mySProject, myTestsWrapper);
+    List<STestRun> applicableTestRuns = myFailedTestFilter.apply(myFailedBuildInfo, mySBuild, mySProject, myTestsWrapper);
 
     Assert.assertEquals(applicableTestRuns.size(), 1);
   }
@@ -105,7 +109,7 @@ public class FailedTestsFilterTest extends BaseTestCase {
   public void Test_TestRunIsFixed() {
     when(mySTestRun.isFixed()).thenReturn(true);
 
-    List<STestRun> applicableTestRuns = myFailedTestFilter.apply(myFailedBuildInfo, mySProject, myTestsWrapper);
+    List<STestRun> applicableTestRuns = myFailedTestFilter.apply(myFailedBuildInfo, mySBuild, mySProject, myTestsWrapper);
 
     Assert.assertEquals(applicableTestRuns.size(), 0);
   }
@@ -113,7 +117,7 @@ public class FailedTestsFilterTest extends BaseTestCase {
   public void Test_TestRunIsNotFixed() {
     when(mySTestRun.isFixed()).thenReturn(false);
 
-    List<STestRun> applicableTestRuns = myFailedTestFilter.apply(myFailedBuildInfo, mySProject, myTestsWrapper);
+    List<STestRun> applicableTestRuns = myFailedTestFilter.apply(myFailedBuildInfo, mySBuild, mySProject, myTestsWrapper);
 
     Assert.assertEquals(applicableTestRuns.size(), 1);
   }
@@ -121,7 +125,7 @@ public class FailedTestsFilterTest extends BaseTestCase {
   public void Test_TestRunNotNewFailure() {
     when(mySTestRun.isNewFailure()).thenReturn(false);
 
-    List<STestRun> applicableTestRuns = myFailedTestFilter.apply(myFailedBuildInfo, mySProject, myTestsWrapper);
+    List<STestRun> applicableTestRuns = myFailedTestFilter.apply(myFailedBuildInfo, mySBuild, mySProject, myTestsWrapper);
 
     Assert.assertEquals(applicableTestRuns.size(), 0);
   }
@@ -129,7 +133,7 @@ public class FailedTestsFilterTest extends BaseTestCase {
   public void Test_TestRunIsNewFailure() {
     when(mySTestRun.isNewFailure()).thenReturn(true);
 
-    List<STestRun> applicableTestRuns = myFailedTestFilter.apply(myFailedBuildInfo, mySProject, myTestsWrapper);
+    List<STestRun> applicableTestRuns = myFailedTestFilter.apply(myFailedBuildInfo, mySBuild, mySProject, myTestsWrapper);
 
     Assert.assertEquals(applicableTestRuns.size(), 1);
   }
@@ -138,7 +142,7 @@ public class FailedTestsFilterTest extends BaseTestCase {
     when(myInvestigationsManager.checkUnderInvestigation(mySProject, mySBuild, mySTest)).thenReturn(true);
     when(myTestNameResponsibilityEntry.getProject()).thenReturn(mySProject);
 
-    List<STestRun> applicableTestRuns = myFailedTestFilter.apply(myFailedBuildInfo, mySProject, myTestsWrapper);
+    List<STestRun> applicableTestRuns = myFailedTestFilter.apply(myFailedBuildInfo, mySBuild, mySProject, myTestsWrapper);
 
     Assert.assertEquals(applicableTestRuns.size(), 0);
   }
@@ -147,15 +151,57 @@ public class FailedTestsFilterTest extends BaseTestCase {
     when(myInvestigationsManager.checkUnderInvestigation(mySProject, mySBuild, mySTest)).thenReturn(false);
     when(myTestNameResponsibilityEntry.getProject()).thenReturn(mySProject);
 
-    List<STestRun> applicableTestRuns = myFailedTestFilter.apply(myFailedBuildInfo, mySProject, myTestsWrapper);
+    List<STestRun> applicableTestRuns = myFailedTestFilter.apply(myFailedBuildInfo, mySBuild, mySProject, myTestsWrapper);
 
     Assert.assertEquals(applicableTestRuns.size(), 1);
   }
 
+  public void Test_FlakinessIsNotFetchedForInvestigatedTest() {
+    when(myInvestigationsManager.checkUnderInvestigation(mySProject, mySBuild, mySTest)).thenReturn(true);
+
+    myFailedTestFilter.apply(myFailedBuildInfo, mySBuild, mySProject, myTestsWrapper);
+
+    verify(myFlakyTestDetector, never()).prefetch(any());
+    verify(myFlakyTestDetector, never()).isFlaky(anyLong());
+  }
+
+  public void Test_TestsBeyondThresholdAreNotChecked() {
+    when(mySBuild.getBuildOwnParameters()).thenReturn(Collections.singletonMap("autoassigner.maxTestsPerBuildNumber", "1"));
+    STestRun secondTestRun = Mockito.mock(STestRun.class);
+    when(secondTestRun.getTestRunId()).thenReturn(2);
+    when(secondTestRun.isNewFailure()).thenReturn(true);
+    when(secondTestRun.getTest()).thenReturn(mySTest);
+
+    List<STestRun> applicableTestRuns =
+      myFailedTestFilter.apply(myFailedBuildInfo, mySBuild, mySProject, Arrays.asList(mySTestRun, secondTestRun));
+
+    Assert.assertEquals(applicableTestRuns, Collections.singletonList(mySTestRun));
+    verify(myInvestigationsManager, times(1)).checkUnderInvestigation(mySProject, mySBuild, mySTest);
+    verify(myFlakyTestDetector, times(1)).prefetch(any());
+  }
+
+  public void Test_FlakyTestIsReplacedByNextTest() {
+    when(mySBuild.getBuildOwnParameters()).thenReturn(Collections.singletonMap("autoassigner.maxTestsPerBuildNumber", "1"));
+    STest secondTest = Mockito.mock(STest.class);
+    when(secondTest.getTestNameId()).thenReturn(2L);
+    STestRun secondTestRun = Mockito.mock(STestRun.class);
+    when(secondTestRun.getTestRunId()).thenReturn(2);
+    when(secondTestRun.isNewFailure()).thenReturn(true);
+    when(secondTestRun.getTest()).thenReturn(secondTest);
+    when(mySTest.getTestNameId()).thenReturn(1L);
+    when(myFlakyTestDetector.isFlaky(1L)).thenReturn(true);
+
+    List<STestRun> applicableTestRuns =
+      myFailedTestFilter.apply(myFailedBuildInfo, mySBuild, mySProject, Arrays.asList(mySTestRun, secondTestRun));
+
+    Assert.assertEquals(applicableTestRuns, Collections.singletonList(secondTestRun));
+    verify(myFlakyTestDetector, times(2)).prefetch(any());
+  }
+
   public void Test_TestIsFlaky() {
     when(myFlakyTestDetector.isFlaky(anyLong())).thenReturn(true);
 
-    List<STestRun> applicableTestRuns = myFailedTestFilter.apply(myFailedBuildInfo, mySProject, myTestsWrapper);
+    List<STestRun> applicableTestRuns = myFailedTestFilter.apply(myFailedBuildInfo, mySBuild, mySProject, myTestsWrapper);
 
     Assert.assertEquals(applicableTestRuns.size(), 0);
   }
@@ -163,7 +209,7 @@ public class FailedTestsFilterTest extends BaseTestCase {
   public void Test_TestNotFlaky() {
     when(myFlakyTestDetector.isFlaky(anyLong())).thenReturn(false);
 
-    List<STestRun> applicableTestRuns = myFailedTestFilter.apply(myFailedBuildInfo, mySProject, myTestsWrapper);
+    List<STestRun> applicableTestRuns = myFailedTestFilter.apply(myFailedBuildInfo, mySBuild, mySProject, myTestsWrapper);
 
     Assert.assertEquals(applicableTestRuns.size(), 1);
   }
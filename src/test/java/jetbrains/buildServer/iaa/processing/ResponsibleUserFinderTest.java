@@ -20,15 +20,20 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import jetbrains.buildServer.BaseTestCase;
+import jetbrains.buildServer.iaa.common.ChangeSetCache;
+import jetbrains.buildServer.iaa.common.FailedBuildInfo;
 import jetbrains.buildServer.iaa.common.HeuristicResult;
 import jetbrains.buildServer.iaa.common.Responsibility;
 import jetbrains.buildServer.iaa.heuristics.Heuristic;
+import jetbrains.buildServer.iaa.utils.AutoAssignerMetrics;
+import jetbrains.buildServer.iaa.utils.TimeBudget;
 import jetbrains.buildServer.serverSide.SBuild;
 import jetbrains.buildServer.serverSide.SProject;
 import jetbrains.buildServer.serverSide.STestRun;
 import jetbrains.buildServer.users.SUser;
 import org.mockito.Mockito;
 import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
@@ -56,16 +61,25 @@ public class ResponsibleUserFinderTest extends BaseTestCase {
     mySProject = Mockito.mock(SProject.class);
     mySTestRun = Mockito.mock(STestRun.class);
     myTestWrapper = Collections.singletonList(mySTestRun);
-    myUserFinder = new ResponsibleUserFinder(Arrays.asList(myHeuristic, myHeuristic2));
+    when(myHeuristic.isApplicable(any())).thenReturn(true);
+    when(myHeuristic2.isApplicable(any())).thenReturn(true);
+    myUserFinder = new ResponsibleUserFinder(Arrays.asList(myHeuristic, myHeuristic2), new AutoAssignerMetrics(),
+                                             new ChangeSetCache());
     HeuristicResult heuristicResult1 = new HeuristicResult();
     HeuristicResult heuristicResult2 = new HeuristicResult();
     when(myHeuristic.findResponsibleUser(any())).thenReturn(heuristicResult1);
     when(myHeuristic2.findResponsibleUser(any())).thenReturn(heuristicResult2);
   }
 
+  @AfterMethod
+  @Override
+  protected void tearDown() throws Exception {
+    myUserFinder.dispose();
+    super.tearDown();
+  }
+
   public void Test_FindResponsibleUser_ResponsibleNotFound() {
-    HeuristicResult result =
-      myUserFinder.findResponsibleUser(mySBuild, mySProject, Collections.emptyList(), myTestWrapper);
+    HeuristicResult result = findResponsibleUser(myTestWrapper);
 
     Assert.assertTrue(result.isEmpty());
   }
@@ -74,7 +88,7 @@ public class ResponsibleUserFinderTest extends BaseTestCase {
     HeuristicResult emptyHeuristicResult = new HeuristicResult();
     when(myHeuristic.findResponsibleUser(any())).thenReturn(emptyHeuristicResult);
 
-    myUserFinder.findResponsibleUser(mySBuild, mySProject, Collections.emptyList(), myTestWrapper);
+    findResponsibleUser(myTestWrapper);
 
     Mockito.verify(myHeuristic2, Mockito.atLeastOnce()).findResponsibleUser(any());
   }
@@ -85,7 +99,7 @@ public class ResponsibleUserFinderTest extends BaseTestCase {
     heuristicResult.addResponsibility(mySTestRun, new Responsibility(sUser, "Failed description"));
     when(myHeuristic.findResponsibleUser(any())).thenReturn(heuristicResult);
 
-    myUserFinder.findResponsibleUser(mySBuild, mySProject, Collections.emptyList(), myTestWrapper);
+    findResponsibleUser(myTestWrapper);
 
     Mockito.verify(myHeuristic2, Mockito.never()).findResponsibleUser(any());
   }
@@ -99,12 +113,103 @@ public class ResponsibleUserFinderTest extends BaseTestCase {
     heuristicResult2.addResponsibility(mySTestRun, new Responsibility(sUser,"Failed description 2"));
     when(myHeuristic2.findResponsibleUser(any())).thenReturn(heuristicResult2);
 
-    HeuristicResult result =
-      myUserFinder.findResponsibleUser(mySBuild, mySProject, Collections.emptyList(), myTestWrapper);
+    HeuristicResult result = findResponsibleUser(myTestWrapper);
     Assert.assertFalse(result.isEmpty());
     Assert.assertNotNull(result.getResponsibility(mySTestRun));
     Responsibility responsibility = result.getResponsibility(mySTestRun);
     assert responsibility != null;
     Assert.assertEquals(responsibility.getDescription(), "Failed description");
   }
+
+  public void Test_FindResponsibleUser_ResumeAfterBudgetExceeded() throws InterruptedException {
+    FailedBuildInfo failedBuildInfo = new FailedBuildInfo(mySBuild);
+    TimeBudget budget = TimeBudget.ofMillis(1);
+    Thread.sleep(10);
+
+    myUserFinder.findResponsibleUser(failedBuildInfo, mySBuild, mySProject, Collections.emptyList(), myTestWrapper,
+                                     budget);
+
+    Mockito.verify(myHeuristic2, Mockito.never()).findResponsibleUser(any());
+    Assert.assertTrue(failedBuildInfo.hasPendingWork());
+    Assert.assertEquals(failedBuildInfo.getNextHeuristic(), 1);
+
+    myUserFinder.findResponsibleUser(failedBuildInfo, mySBuild, mySProject, Collections.emptyList(), myTestWrapper,
+                                     TimeBudget.UNLIMITED);
+
+    Mockito.verify(myHeuristic, Mockito.times(1)).findResponsibleUser(any());
+    Mockito.verify(myHeuristic2, Mockito.times(1)).findResponsibleUser(any());
+    Assert.assertFalse(failedBuildInfo.hasPendingWork());
+  }
+
+  public void Test_FindResponsibleUser_ParallelModeMergesInPriorityOrder() {
+    setInternalProperty("teamcity.autoassigner.parallelHeuristics.enabled", "true");
+    SUser sUser = Mockito.mock(SUser.class);
+    STestRun secondTestRun = Mockito.mock(STestRun.class);
+    when(mySTestRun.getTestRunId()).thenReturn(1);
+    when(secondTestRun.getTestRunId()).thenReturn(2);
+    HeuristicResult heuristicResult = new HeuristicResult();
+    heuristicResult.addResponsibility(mySTestRun, new Responsibility(sUser, "Failed description"));
+    when(myHeuristic.findResponsibleUser(any())).thenReturn(heuristicResult);
+    HeuristicResult heuristicResult2 = new HeuristicResult();
+    heuristicResult2.addResponsibility(mySTestRun, new Responsibility(sUser, "Failed description 2"));
+    heuristicResult2.addResponsibility(secondTestRun, new Responsibility(sUser, "Failed description 3"));
+    when(myHeuristic2.findResponsibleUser(any())).thenReturn(heuristicResult2);
+
+    HeuristicResult result = findResponsibleUser(Arrays.asList(mySTestRun, secondTestRun));
+
+    Responsibility responsibility = result.getResponsibility(mySTestRun);
+    assert responsibility != null;
+    Assert.assertEquals(responsibility.getDescription(), "Failed description");
+    Responsibility secondResponsibility = result.getResponsibility(secondTestRun);
+    assert secondResponsibility != null;
+    Assert.assertEquals(secondResponsibility.getDescription(), "Failed description 3");
+  }
+
+  public void Test_FindResponsibleUser_NotApplicableHeuristicIsSkipped() {
+    when(myHeuristic.isApplicable(any())).thenReturn(false);
+
+    findResponsibleUser(myTestWrapper);
+
+    Mockito.verify(myHeuristic, Mockito.never()).findResponsibleUser(any());
+    Mockito.verify(myHeuristic2, Mockito.times(1)).findResponsibleUser(any());
+  }
+
+  public void Test_FindResponsibleUser_ExpensiveHeuristicIsDeferred() {
+    FailedBuildInfo failedBuildInfo = new FailedBuildInfo(mySBuild);
+    when(myHeuristic2.getEstimatedCostInMillis()).thenReturn(600_000L);
+
+    myUserFinder.findResponsibleUser(failedBuildInfo, mySBuild, mySProject, Collections.emptyList(), myTestWrapper,
+                                     TimeBudget.ofMillis(60_000));
+
+    Mockito.verify(myHeuristic, Mockito.times(1)).findResponsibleUser(any());
+    Mockito.verify(myHeuristic2, Mockito.never()).findResponsibleUser(any());
+    Assert.assertTrue(failedBuildInfo.hasPendingWork());
+    Assert.assertEquals(failedBuildInfo.getNextHeuristic(), 1);
+
+    // the deferred heuristic is the first one in the next pass, so it runs regardless of the budget
+    myUserFinder.findResponsibleUser(failedBuildInfo, mySBuild, mySProject, Collections.emptyList(), myTestWrapper,
+                                     TimeBudget.ofMillis(60_000));
+
+    Mockito.verify(myHeuristic2, Mockito.times(1)).findResponsibleUser(any());
+    Assert.assertFalse(failedBuildInfo.hasPendingWork());
+  }
+
+  public void Test_FindResponsibleUser_ParallelModeDefersExpensiveHeuristic() {
+    setInternalProperty("teamcity.autoassigner.parallelHeuristics.enabled", "true");
+    FailedBuildInfo failedBuildInfo = new FailedBuildInfo(mySBuild);
+    when(myHeuristic2.getEstimatedCostInMillis()).thenReturn(600_000L);
+
+    myUserFinder.findResponsibleUser(failedBuildInfo, mySBuild, mySProject, Collections.emptyList(), myTestWrapper,
+                                     TimeBudget.ofMillis(60_000));
+
+    Mockito.verify(myHeuristic, Mockito.times(1)).findResponsibleUser(any());
+    Mockito.verify(myHeuristic2, Mockito.never()).findResponsibleUser(any());
+    Assert.assertTrue(failedBuildInfo.hasPendingWork());
+    Assert.assertEquals(failedBuildInfo.getNextHeuristic(), 1);
+  }
+
+  private HeuristicResult findResponsibleUser(List<STestRun> testRuns) {
+    return myUserFinder.findResponsibleUser(new FailedBuildInfo(mySBuild), mySBuild, mySProject,
+                                            Collections.emptyList(), testRuns, TimeBudget.UNLIMITED);
+  }
 }
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2000-2018 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.iaa.processing;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import jetbrains.buildServer.BaseTestCase;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+@Test
+public class UnresolvedItemsTest extends BaseTestCase {
+
+  public void Test_AllItemsAreUnresolvedInitially() {
+    UnresolvedItems<String> items = new UnresolvedItems<>(Arrays.asList("a", "b", "c"));
+
+    Assert.assertEquals(items.size(), 3);
+    Assert.assertFalse(items.isEmpty());
+    Assert.assertEquals(items.toString(), "[a, b, c]");
+  }
+
+  public void Test_ResolvedItemsAreSkipped() {
+    UnresolvedItems<String> items = new UnresolvedItems<>(Arrays.asList("a", "b", "c", "d"));
+    Assert.assertEquals(items.get(1), "b");
+
+    items.resolveIf(item -> item.equals("b") || item.equals("d"));
+
+    Assert.assertEquals(items.size(), 2);
+    Assert.assertEquals(items.get(0), "a");
+    Assert.assertEquals(items.get(1), "c");
+    List<String> iterated = new ArrayList<>();
+    for (String item : items) {
+      iterated.add(item);
+    }
+    Assert.assertEquals(iterated.toString(), "[a, c]");
+  }
+
+  public void Test_AllItemsResolved() {
+    UnresolvedItems<String> items = new UnresolvedItems<>(Arrays.asList("a", "b"));
+
+    items.resolveIf(item -> true);
+
+    Assert.assertTrue(items.isEmpty());
+    Assert.assertEquals(items.size(), 0);
+    Assert.assertFalse(items.iterator().hasNext());
+  }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2000-2018 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.iaa.utils;
+
+import java.util.Arrays;
+import jetbrains.buildServer.BaseTestCase;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+@Test
+public class IntHashSetTest extends BaseTestCase {
+
+  public void Test_AddAndContains() {
+    IntHashSet set = new IntHashSet();
+    Assert.assertTrue(set.isEmpty());
+    Assert.assertTrue(set.add(239));
+    Assert.assertFalse(set.add(239));
+    Assert.assertTrue(set.add(-1));
+
+    Assert.assertEquals(set.size(), 2);
+    Assert.assertTrue(set.contains(239));
+    Assert.assertTrue(set.contains(-1));
+    Assert.assertFalse(set.contains(240));
+  }
+
+  public void Test_ZeroIsStored() {
+    IntHashSet set = new IntHashSet();
+    Assert.assertFalse(set.contains(0));
+    Assert.assertTrue(set.add(0));
+    Assert.assertFalse(set.add(0));
+
+    Assert.assertTrue(set.contains(0));
+    Assert.assertEquals(set.size(), 1);
+    Assert.assertEquals(Arrays.toString(set.toArray()), "[0]");
+  }
+
+  public void Test_SetGrows() {
+    IntHashSet set = new IntHashSet();
+    for (int i = 0; i < 10000; i++) {
+      Assert.assertTrue(set.add(i));
+    }
+
+    Assert.assertEquals(set.size(), 10000);
+    for (int i = 0; i < 10000; i++) {
+      Assert.assertTrue(set.contains(i));
+    }
+    Assert.assertFalse(set.contains(10000));
+  }
+
+  public void Test_ToArrayReturnsAllValues() {
+    IntHashSet set = new IntHashSet(2);
+    set.add(3);
+    set.add(1);
+    set.add(2);
+    set.add(1);
+
+    int[] values = set.toArray();
+    Arrays.sort(values);
+    Assert.assertEquals(Arrays.toString(values), "[1, 2, 3]");
+    Assert.assertEquals(set.toString(), "[1, 2, 3]");
+  }
+}
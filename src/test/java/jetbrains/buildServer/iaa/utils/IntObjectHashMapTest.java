@@ -0,0 +1,84 @@
+/*
+ * Copyright 2000-2018 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.iaa.utils;
+
+import jetbrains.buildServer.BaseTestCase;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+@Test
+public class IntObjectHashMapTest extends BaseTestCase {
+
+  public void Test_PutAndGet() {
+    IntObjectHashMap<String> map = new IntObjectHashMap<>();
+    Assert.assertTrue(map.isEmpty());
+    Assert.assertNull(map.put(239, "a"));
+    Assert.assertEquals(map.put(239, "b"), "a");
+    Assert.assertNull(map.put(0, "zero"));
+    Assert.assertNull(map.put(-1, "minus one"));
+
+    Assert.assertEquals(map.size(), 3);
+    Assert.assertEquals(map.get(239), "b");
+    Assert.assertEquals(map.get(0), "zero");
+    Assert.assertEquals(map.get(-1), "minus one");
+    Assert.assertNull(map.get(240));
+  }
+
+  public void Test_MapGrows() {
+    IntObjectHashMap<Integer> map = new IntObjectHashMap<>();
+    for (int i = 0; i < 10000; i++) {
+      map.put(i, i * 2);
+    }
+
+    Assert.assertEquals(map.size(), 10000);
+    for (int i = 0; i < 10000; i++) {
+      Assert.assertEquals(map.get(i), Integer.valueOf(i * 2));
+    }
+    Assert.assertNull(map.get(10000));
+  }
+
+  public void Test_PutAllIntoEmptyMapCopiesEntries() {
+    IntObjectHashMap<String> other = new IntObjectHashMap<>();
+    other.put(0, "zero");
+    other.put(1, "one");
+    IntObjectHashMap<String> map = new IntObjectHashMap<>();
+
+    map.putAll(other);
+    other.put(2, "two");
+
+    Assert.assertEquals(map.size(), 2);
+    Assert.assertEquals(map.get(0), "zero");
+    Assert.assertEquals(map.get(1), "one");
+    Assert.assertNull(map.get(2));
+  }
+
+  public void Test_PutAllOverridesValues() {
+    IntObjectHashMap<String> map = new IntObjectHashMap<>();
+    map.put(1, "one");
+    map.put(2, "two");
+    IntObjectHashMap<String> other = new IntObjectHashMap<>();
+    other.put(2, "other two");
+    other.put(3, "three");
+
+    map.putAll(other);
+
+    Assert.assertEquals(map.size(), 3);
+    Assert.assertEquals(map.get(1), "one");
+    Assert.assertEquals(map.get(2), "other two");
+    Assert.assertEquals(map.get(3), "three");
+  }
+}
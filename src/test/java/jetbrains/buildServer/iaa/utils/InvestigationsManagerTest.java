@@ -7,6 +7,8 @@ import jetbrains.buildServer.responsibility.BuildProblemResponsibilityEntry;
 import jetbrains.buildServer.responsibility.ResponsibilityEntry;
 import jetbrains.buildServer.responsibility.TestNameResponsibilityEntry;
 import jetbrains.buildServer.responsibility.impl.ResponsibilityFacadeImpl;
+import jetbrains.buildServer.serverSide.BuildServerListener;
+import jetbrains.buildServer.serverSide.BuildServerListenerEventDispatcher;
 import jetbrains.buildServer.serverSide.SBuild;
 import jetbrains.buildServer.serverSide.SProject;
 import jetbrains.buildServer.serverSide.STest;
@@ -14,8 +16,11 @@ import jetbrains.buildServer.serverSide.STestRun;
 import jetbrains.buildServer.serverSide.audit.AuditLogBuilder;
 import jetbrains.buildServer.serverSide.audit.AuditLogProvider;
 import jetbrains.buildServer.serverSide.impl.problems.BuildProblemImpl;
+import jetbrains.buildServer.tests.TestName;
 import jetbrains.buildServer.users.User;
+import jetbrains.buildServer.users.UserModel;
 import org.assertj.core.api.Assertions;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
@@ -39,6 +44,8 @@ public class InvestigationsManagerTest extends BaseTestCase {
   private TestNameResponsibilityEntry myResponsibilityEntry;
   private SBuild mySBuild;
   private User myUser;
+  private BuildServerListenerEventDispatcher myEventDispatcher;
+  private ResponsibilityFacadeImpl myResponsibilityFacade;
 
   @BeforeMethod
   @Override
@@ -67,8 +74,8 @@ public class InvestigationsManagerTest extends BaseTestCase {
     mySTest = Mockito.mock(STest.class);
     myResponsibilityEntry = Mockito.mock(TestNameResponsibilityEntry.class);
     final AuditLogProvider auditLogProvider = Mockito.mock(AuditLogProvider.class);
-    final ResponsibilityFacadeImpl responsibilityFacade = Mockito.mock(ResponsibilityFacadeImpl.class);
-    when(responsibilityFacade.getProject(any())).thenCallRealMethod();
+    myResponsibilityFacade = Mockito.mock(ResponsibilityFacadeImpl.class);
+    when(myResponsibilityFacade.getProject(any())).thenCallRealMethod();
     final AuditLogBuilder auditLogBuilder = Mockito.mock(AuditLogBuilder.class);
     when(auditLogProvider.getBuilder()).thenReturn(auditLogBuilder);
     when(myResponsibilityEntry.getTimestamp()).thenReturn(new Date(1000000));
@@ -77,7 +84,10 @@ public class InvestigationsManagerTest extends BaseTestCase {
     when(mySTest.getAllResponsibilities()).thenReturn(Collections.singletonList(myResponsibilityEntry));
     when(mySTest.getProjectId()).thenReturn("123");
 
-    myInvestigationsManager = new InvestigationsManager(auditLogProvider, responsibilityFacade);
+    myEventDispatcher = Mockito.mock(BuildServerListenerEventDispatcher.class);
+    final UserModel userModel = Mockito.mock(UserModel.class);
+    myInvestigationsManager =
+      new InvestigationsManager(auditLogProvider, myResponsibilityFacade, userModel, myEventDispatcher);
   }
 
   public void Test_BuildIsUnderInvestigationInSameProject() {
@@ -173,6 +183,45 @@ public class InvestigationsManagerTest extends BaseTestCase {
     Assertions.assertThat(myInvestigationsManager.checkUnderInvestigation(mySProject, mySBuild, sTest)).isFalse();
   }
 
+  public void Test_TestInvestigationIsCachedUntilRemoved() {
+    when(myResponsibilityEntry.getState()).thenReturn(ResponsibilityEntry.State.TAKEN);
+    when(myResponsibilityEntry.getProject()).thenReturn(mySProject);
+    Assertions.assertThat(myInvestigationsManager.checkUnderInvestigation(mySProject, mySBuild, mySTest)).isTrue();
+
+    when(myResponsibilityEntry.getState()).thenReturn(ResponsibilityEntry.State.NONE);
+    Assertions.assertThat(myInvestigationsManager.checkUnderInvestigation(mySProject, mySBuild, mySTest)).isTrue();
+
+    ArgumentCaptor<BuildServerListener> listener = ArgumentCaptor.forClass(BuildServerListener.class);
+    Mockito.verify(myEventDispatcher).addListener(listener.capture());
+    listener.getValue().responsibleRemoved(mySProject, myResponsibilityEntry);
+
+    Assertions.assertThat(myInvestigationsManager.checkUnderInvestigation(mySProject, mySBuild, mySTest)).isFalse();
+  }
+
+  public void Test_TestInvestigationIsInvalidatedOnlyForChangedTests() {
+    when(mySTest.getTestNameId()).thenReturn(1L);
+    when(myResponsibilityEntry.getState()).thenReturn(ResponsibilityEntry.State.TAKEN);
+    when(myResponsibilityEntry.getProject()).thenReturn(mySProject);
+    Assertions.assertThat(myInvestigationsManager.checkUnderInvestigation(mySProject, mySBuild, mySTest)).isTrue();
+    when(myResponsibilityEntry.getState()).thenReturn(ResponsibilityEntry.State.NONE);
+
+    TestName otherTestName = Mockito.mock(TestName.class);
+    TestNameResponsibilityEntry otherEntry = Mockito.mock(TestNameResponsibilityEntry.class);
+    when(otherEntry.getTestNameId()).thenReturn(2L);
+    when(otherEntry.getState()).thenReturn(ResponsibilityEntry.State.NONE);
+    when(myResponsibilityFacade.findTestResponsibility(otherTestName, "Project ID")).thenReturn(otherEntry);
+    ArgumentCaptor<BuildServerListener> listener = ArgumentCaptor.forClass(BuildServerListener.class);
+    Mockito.verify(myEventDispatcher).addListener(listener.capture());
+    listener.getValue().responsibleChanged(mySProject, Collections.singletonList(otherTestName),
+                                           myResponsibilityEntry, false);
+    Assertions.assertThat(myInvestigationsManager.checkUnderInvestigation(mySProject, mySBuild, mySTest)).isTrue();
+
+    TestName unresolvedTestName = Mockito.mock(TestName.class);
+    listener.getValue().responsibleChanged(mySProject, Collections.singletonList(unresolvedTestName),
+                                           myResponsibilityEntry, false);
+    Assertions.assertThat(myInvestigationsManager.checkUnderInvestigation(mySProject, mySBuild, mySTest)).isFalse();
+  }
+
   public void Test_BuildProblemFindPreviousResponsible_FixedBeforeQueued() {
     when(myBuildProblemResponsibilityEntry.getState()).thenReturn(ResponsibilityEntry.State.FIXED);
     when(myBuildProblemResponsibilityEntry.getResponsibleUser()).thenReturn(myUser);
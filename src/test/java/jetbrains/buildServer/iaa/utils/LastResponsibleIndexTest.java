@@ -0,0 +1,146 @@
+/*
+ * Copyright 2000-2018 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.iaa.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import jetbrains.buildServer.BaseTestCase;
+import jetbrains.buildServer.serverSide.audit.AuditLogAction;
+import jetbrains.buildServer.serverSide.audit.AuditLogBuilder;
+import jetbrains.buildServer.serverSide.audit.AuditLogProvider;
+import jetbrains.buildServer.serverSide.audit.ObjectWrapper;
+import jetbrains.buildServer.serverSide.impl.audit.filters.TestId;
+import jetbrains.buildServer.users.User;
+import org.mockito.Mockito;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.when;
+
+@Test
+public class LastResponsibleIndexTest extends BaseTestCase {
+  private AuditLogBuilder myAuditLogBuilder;
+  private LastResponsibleIndex myIndex;
+
+  @BeforeMethod
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    AuditLogProvider auditLogProvider = Mockito.mock(AuditLogProvider.class);
+    myAuditLogBuilder = Mockito.mock(AuditLogBuilder.class);
+    when(auditLogProvider.getBuilder()).thenReturn(myAuditLogBuilder);
+    myIndex = new LastResponsibleIndex(auditLogProvider, 100);
+  }
+
+  public void Test_LoadKeepsLatestActions() {
+    AuditLogAction latest = createAction(TestId.createOn(1, "Project"), 2, 3000);
+    AuditLogAction previous = createAction(TestId.createOn(1, "Project"), 3, 2000);
+    AuditLogAction otherProject = createAction(TestId.createOn(1, "Other Project"), 4, 4000);
+    when(myAuditLogBuilder.getLogActions(anyInt())).thenReturn(Arrays.asList(otherProject, latest, previous));
+
+    Assert.assertEquals(myIndex.findLastResponsible(Arrays.asList(1L, 5L), Arrays.asList("Project", "Other Project")),
+                        Collections.singletonMap(1L, 4L));
+    Assert.assertEquals(myIndex.findLastResponsible(Collections.singletonList(1L), Collections.singletonList("Project")),
+                        Collections.singletonMap(1L, 2L));
+    Mockito.verify(myAuditLogBuilder, Mockito.times(1)).getLogActions(anyInt());
+  }
+
+  public void Test_TestsAreLoadedOncePerProject() {
+    when(myAuditLogBuilder.getLogActions(anyInt())).thenReturn(Collections.emptyList());
+
+    Assert.assertTrue(myIndex.findLastResponsible(Collections.singletonList(1L), Collections.singletonList("Project")).isEmpty());
+    Assert.assertTrue(myIndex.findLastResponsible(Collections.singletonList(1L), Collections.singletonList("Project")).isEmpty());
+    Mockito.verify(myAuditLogBuilder, Mockito.times(1)).getLogActions(anyInt());
+
+    myIndex.findLastResponsible(Collections.singletonList(1L), Collections.singletonList("Parent Project"));
+    Mockito.verify(myAuditLogBuilder, Mockito.times(2)).getLogActions(anyInt());
+  }
+
+  public void Test_CrowdedOutTestsAreQueriedAgain() {
+    List<AuditLogAction> crowdingActions = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      crowdingActions.add(createAction(TestId.createOn(1, "Project"), 2, 3000 - i));
+    }
+    when(myAuditLogBuilder.getLogActions(anyInt())).thenReturn(crowdingActions, Collections.singletonList(
+      createAction(TestId.createOn(3, "Project"), 4, 1000)));
+
+    Map<Long, Long> lastResponsible =
+      myIndex.findLastResponsible(Arrays.asList(1L, 3L), Collections.singletonList("Project"));
+
+    Assert.assertEquals(lastResponsible.get(1L), Long.valueOf(2L));
+    Assert.assertEquals(lastResponsible.get(3L), Long.valueOf(4L));
+    Mockito.verify(myAuditLogBuilder).getLogActions(10);
+    Mockito.verify(myAuditLogBuilder).getLogActions(5);
+  }
+
+  public void Test_CrowdedOutTestIsNotCachedAsMissing() {
+    List<AuditLogAction> actionsWithoutUser = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      AuditLogAction action = Mockito.mock(AuditLogAction.class);
+      when(action.getObjectId()).thenReturn(TestId.createOn(1, "Project").asString());
+      when(action.getObjects()).thenReturn(Collections.emptyList());
+      actionsWithoutUser.add(action);
+    }
+    when(myAuditLogBuilder.getLogActions(anyInt())).thenReturn(actionsWithoutUser);
+
+    Assert.assertTrue(myIndex.findLastResponsible(Collections.singletonList(1L), Collections.singletonList("Project")).isEmpty());
+    Assert.assertTrue(myIndex.findLastResponsible(Collections.singletonList(1L), Collections.singletonList("Project")).isEmpty());
+    Mockito.verify(myAuditLogBuilder, Mockito.times(2)).getLogActions(anyInt());
+  }
+
+  public void Test_UpdateReplacesOlderEntriesOnly() {
+    myIndex.update(1, "Project", 2, 2000);
+    myIndex.update(1, "Project", 3, 1000);
+    Assert.assertEquals(myIndex.findLastResponsible(Collections.singletonList(1L), Collections.singletonList("Project")),
+                        Collections.singletonMap(1L, 2L));
+
+    myIndex.update(1, "Project", 4, 3000);
+    Assert.assertEquals(myIndex.findLastResponsible(Collections.singletonList(1L), Collections.singletonList("Project")),
+                        Collections.singletonMap(1L, 4L));
+    Mockito.verify(myAuditLogBuilder, Mockito.never()).getLogActions(anyInt());
+  }
+
+  public void Test_IndexIsBounded() {
+    when(myAuditLogBuilder.getLogActions(anyInt())).thenReturn(Collections.emptyList());
+    for (long i = 1; i <= 200; i++) {
+      myIndex.update(i, "Project", 2, 1000);
+    }
+
+    Assert.assertEquals(myIndex.findLastResponsible(Collections.singletonList(200L), Collections.singletonList("Project")),
+                        Collections.singletonMap(200L, 2L));
+    Assert.assertTrue(myIndex.findLastResponsible(Collections.singletonList(1L), Collections.singletonList("Project")).isEmpty());
+  }
+
+  private static AuditLogAction createAction(TestId testId, long userId, long timestamp) {
+    User user = Mockito.mock(User.class);
+    when(user.getId()).thenReturn(userId);
+    ObjectWrapper userWrapper = Mockito.mock(ObjectWrapper.class);
+    when(userWrapper.getObject()).thenReturn(user);
+
+    AuditLogAction action = Mockito.mock(AuditLogAction.class);
+    when(action.getObjectId()).thenReturn(testId.asString());
+    when(action.getObjects()).thenReturn(Collections.singletonList(userWrapper));
+    when(action.getCreationDate()).thenReturn(new Date(timestamp));
+    return action;
+  }
+}
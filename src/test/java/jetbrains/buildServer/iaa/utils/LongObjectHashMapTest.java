@@ -0,0 +1,54 @@
+/*
+ * Copyright 2000-2018 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package jetbrains.buildServer.iaa.utils;
+
+import jetbrains.buildServer.BaseTestCase;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+@Test
+public class LongObjectHashMapTest extends BaseTestCase {
+
+  public void Test_PutAndGet() {
+    LongObjectHashMap<String> map = new LongObjectHashMap<>();
+    Assert.assertTrue(map.isEmpty());
+    Assert.assertNull(map.put(239, "a"));
+    Assert.assertEquals(map.put(239, "b"), "a");
+    Assert.assertNull(map.put(0, "zero"));
+    Assert.assertNull(map.put(Long.MAX_VALUE, "max"));
+
+    Assert.assertEquals(map.size(), 3);
+    Assert.assertEquals(map.get(239), "b");
+    Assert.assertEquals(map.get(0), "zero");
+    Assert.assertEquals(map.get(Long.MAX_VALUE), "max");
+    Assert.assertNull(map.get(240));
+  }
+
+  public void Test_MapGrows() {
+    LongObjectHashMap<Long> map = new LongObjectHashMap<>();
+    for (long i = 0; i < 10000; i++) {
+      map.put(i << 32, i);
+    }
+
+    Assert.assertEquals(map.size(), 10000);
+    for (long i = 0; i < 10000; i++) {
+      Assert.assertEquals(map.get(i << 32), Long.valueOf(i));
+    }
+    Assert.assertNull(map.get(1));
+  }
+}
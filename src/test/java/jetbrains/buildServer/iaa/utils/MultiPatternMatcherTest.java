@@ -0,0 +1,74 @@
+/*
+ * Copyright 2000-2018 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.iaa.utils;
+
+import java.util.*;
+import jetbrains.buildServer.BaseTestCase;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+@Test
+public class MultiPatternMatcherTest extends BaseTestCase {
+
+  public void Test_OverlappingPatternsAreFound() {
+    MultiPatternMatcher matcher = new MultiPatternMatcher(Arrays.asList("he", "she", "his", "hers", "xyz"));
+
+    Assert.assertEquals(findAll(matcher, "ushers"), new TreeSet<>(Arrays.asList(0, 1, 3)));
+    Assert.assertEquals(findAll(matcher, "ahis"), new TreeSet<>(Collections.singletonList(2)));
+    Assert.assertTrue(findAll(matcher, "nothing").isEmpty());
+  }
+
+  public void Test_DuplicateAndEmptyPatterns() {
+    MultiPatternMatcher matcher = new MultiPatternMatcher(Arrays.asList("a/b", "", "a/b"));
+
+    Assert.assertEquals(findAll(matcher, "x a/b y"), new TreeSet<>(Arrays.asList(0, 1, 2)));
+    Assert.assertEquals(findAll(matcher, ""), new TreeSet<>(Collections.singletonList(1)));
+  }
+
+  public void Test_SameResultAsContains() {
+    Random random = new Random(239);
+    for (int iteration = 0; iteration < 200; iteration++) {
+      List<String> patterns = new ArrayList<>();
+      for (int i = 0; i < 20; i++) {
+        patterns.add(randomString(random, 1 + random.nextInt(4)));
+      }
+      String text = randomString(random, random.nextInt(50));
+
+      Set<Integer> expected = new TreeSet<>();
+      for (int i = 0; i < patterns.size(); i++) {
+        if (text.contains(patterns.get(i))) {
+          expected.add(i);
+        }
+      }
+      Assert.assertEquals(findAll(new MultiPatternMatcher(patterns), text), expected, text + " " + patterns);
+    }
+  }
+
+  private static Set<Integer> findAll(MultiPatternMatcher matcher, String text) {
+    Set<Integer> result = new TreeSet<>();
+    matcher.findAll(text, result::add);
+    return result;
+  }
+
+  private static String randomString(Random random, int length) {
+    StringBuilder result = new StringBuilder();
+    for (int i = 0; i < length; i++) {
+      result.append("ab./".charAt(random.nextInt(4)));
+    }
+    return result.toString();
+  }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2000-2018 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.iaa.utils;
+
+import jetbrains.buildServer.BaseTestCase;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+@Test
+public class ProblemTextCacheTest extends BaseTestCase {
+
+  public void Test_LeastRecentlyUsedTextsAreEvicted() {
+    ProblemTextCache cache = new ProblemTextCache(10);
+    cache.put("a", "aaaa");
+    cache.put("b", "bbbb");
+    Assert.assertEquals(cache.get("a"), "aaaa");
+
+    cache.put("c", "cccc");
+
+    Assert.assertEquals(cache.get("a"), "aaaa");
+    Assert.assertNull(cache.get("b"));
+    Assert.assertEquals(cache.get("c"), "cccc");
+  }
+
+  public void Test_TooLongTextIsNotCached() {
+    ProblemTextCache cache = new ProblemTextCache(3);
+    cache.put("a", "aaaa");
+
+    Assert.assertNull(cache.get("a"));
+  }
+
+  public void Test_ReplacedTextIsAccounted() {
+    ProblemTextCache cache = new ProblemTextCache(8);
+    cache.put("a", "aaaa");
+    cache.put("a", "aa");
+    cache.put("b", "bbbbbb");
+
+    Assert.assertEquals(cache.get("a"), "aa");
+    Assert.assertEquals(cache.get("b"), "bbbbbb");
+  }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2000-2018 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.iaa.utils;
+
+import jetbrains.buildServer.BaseTestCase;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+@Test
+public class ProblemTextCollectorTest extends BaseTestCase {
+
+  public void Test_ShortTextIsKept() {
+    ProblemTextCollector collector = new ProblemTextCollector(10, 20, 10);
+    collector.append("first\nsecond").append("third");
+
+    Assert.assertEquals(collector.getText(), "first\nsecond\nthird");
+  }
+
+  public void Test_HeadAndTailAreKept() {
+    ProblemTextCollector collector = new ProblemTextCollector(8, 8, 0);
+    collector.append("head\nmiddle1\nmiddle2\nmiddle3\nlast");
+
+    Assert.assertEquals(collector.getText(), "head\nlast");
+  }
+
+  public void Test_StackFramesFromMiddleAreKept() {
+    ProblemTextCollector collector = new ProblemTextCollector(6, 5, 100);
+    collector.append("head\n" +
+                     "noise\n" +
+                     "\tat com.foo.Bar.test(Bar.java:1)\n" +
+                     "noise\n" +
+                     "  File \"pkg/module.py\", line 10, in test\n" +
+                     "noise\n" +
+                     "tail");
+
+    Assert.assertEquals(collector.getText(), "head\n" +
+                                             "\tat com.foo.Bar.test(Bar.java:1)\n" +
+                                             "  File \"pkg/module.py\", line 10, in test\n" +
+                                             "tail");
+  }
+
+  public void Test_StackFramesAreBounded() {
+    ProblemTextCollector collector = new ProblemTextCollector(0, 0, 40);
+    collector.append("\tat com.foo.Bar.test(Bar.java:1)\n" +
+                     "\tat com.foo.Baz.test(Baz.java:1)");
+
+    Assert.assertEquals(collector.getText(), "\tat com.foo.Bar.test(Bar.java:1)");
+  }
+
+  public void Test_LongLineIsCut() {
+    ProblemTextCollector collector = new ProblemTextCollector(3, 3, 0);
+    collector.append("abcdefghij");
+
+    Assert.assertEquals(collector.getText(), "abc\nhij");
+  }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2000-2018 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.iaa.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import jetbrains.buildServer.BaseTestCase;
+import jetbrains.buildServer.serverSide.SProject;
+import org.mockito.Mockito;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.mockito.Mockito.when;
+
+@Test
+public class ProjectHierarchyIndexTest extends BaseTestCase {
+  private ProjectHierarchyIndex myIndex;
+  private SProject myRoot;
+  private SProject myParent;
+  private SProject myProject;
+
+  @BeforeMethod
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myIndex = new ProjectHierarchyIndex();
+    myRoot = Mockito.mock(SProject.class);
+    myParent = Mockito.mock(SProject.class);
+    myProject = Mockito.mock(SProject.class);
+    when(myRoot.getProjectId()).thenReturn("_Root");
+    when(myParent.getProjectId()).thenReturn("Parent");
+    when(myParent.getParentProject()).thenReturn(myRoot);
+    when(myProject.getProjectId()).thenReturn("Project");
+    when(myProject.getParentProject()).thenReturn(myParent);
+  }
+
+  public void Test_HierarchyStartsWithProject() {
+    Assert.assertEquals(new ArrayList<>(myIndex.getHierarchyIds(myProject)),
+                        Arrays.asList("Project", "Parent", "_Root"));
+    Assert.assertTrue(myIndex.isSameOrAncestor("Project", myProject));
+    Assert.assertTrue(myIndex.isSameOrAncestor("_Root", myProject));
+    Assert.assertFalse(myIndex.isSameOrAncestor("Project", myParent));
+  }
+
+  public void Test_HierarchyIsRecomputedAfterInvalidation() {
+    Assert.assertTrue(myIndex.isSameOrAncestor("Parent", myProject));
+
+    when(myProject.getParentProject()).thenReturn(myRoot);
+    Assert.assertTrue(myIndex.isSameOrAncestor("Parent", myProject));
+
+    myIndex.invalidate();
+    Assert.assertFalse(myIndex.isSameOrAncestor("Parent", myProject));
+  }
+}
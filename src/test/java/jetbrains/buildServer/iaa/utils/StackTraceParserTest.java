@@ -0,0 +1,64 @@
+/*
+ * Copyright 2000-2018 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.iaa.utils;
+
+import jetbrains.buildServer.BaseTestCase;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+@Test
+public class StackTraceParserTest extends BaseTestCase {
+
+  public void Test_JvmFrames() {
+    String text = "java.lang.AssertionError: expected 1\n" +
+                  "\tat com.foo.bar.Baz$Inner.check(Baz.java:12)\n" +
+                  "\tat com.foo.qux.UtilsKt.helper(Utils.kt:5)\n" +
+                  "\tat java.base/java.lang.Thread.run(Thread.java:834)\n" +
+                  "\tat sun.reflect.NativeMethodAccessorImpl.invoke0(Native Method)";
+
+    Assert.assertEquals(StackTraceParser.parseFileKeys(text).toString(),
+                        "[bar/Baz, qux/UtilsKt, qux/Utils, lang/Thread, reflect/NativeMethodAccessorImpl]");
+  }
+
+  public void Test_DotNetFrames() {
+    String text = "System.Exception: failed\n" +
+                  "   at Foo.Bar.Baz.Method(String s) in C:\\src\\Foo\\Bar\\Baz.cs:line 42\n" +
+                  "   at Foo.Bar.Generic`1+Nested.Run()";
+
+    Assert.assertEquals(StackTraceParser.parseFileKeys(text).toString(), "[Bar/Baz, Bar/Generic]");
+  }
+
+  public void Test_PythonFrames() {
+    String text = "Traceback (most recent call last):\n" +
+                  "  File \"/home/agent/src/pkg/module.py\", line 10, in test_method\n" +
+                  "  File \"main.py\", line 3, in <module>\n" +
+                  "AssertionError";
+
+    Assert.assertEquals(StackTraceParser.parseFileKeys(text).toString(), "[pkg/module, /main]");
+  }
+
+  public void Test_TextWithoutFrames() {
+    Assert.assertTrue(StackTraceParser.parseFileKeys("I contain ./path1/filename and look at this").isEmpty());
+  }
+
+  public void Test_FileKey() {
+    Assert.assertEquals(StackTraceParser.getFileKey("src/com/foo/bar/Baz.java"), "bar/Baz");
+    Assert.assertEquals(StackTraceParser.getFileKey("Baz.java"), "/Baz");
+    Assert.assertEquals(StackTraceParser.getFileKey("dir\\.gitignore"), "dir/.gitignore");
+    Assert.assertNull(StackTraceParser.getFileKey("dir/"));
+  }
+}
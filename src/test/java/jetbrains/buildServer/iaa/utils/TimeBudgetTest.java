@@ -0,0 +1,62 @@
+/*
+ * Copyright 2000-2018 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.iaa.utils;
+
+import jetbrains.buildServer.BaseTestCase;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+@Test
+public class TimeBudgetTest extends BaseTestCase {
+
+  public void Test_NonPositiveBudgetIsUnlimited() {
+    Assert.assertSame(TimeBudget.ofMillis(0), TimeBudget.UNLIMITED);
+    Assert.assertFalse(TimeBudget.ofMillis(-1).isExceeded());
+  }
+
+  public void Test_BudgetIsExceeded() throws InterruptedException {
+    TimeBudget budget = TimeBudget.ofMillis(1);
+    Thread.sleep(10);
+
+    Assert.assertTrue(budget.isExceeded());
+    Assert.assertFalse(TimeBudget.ofMillis(60_000).isExceeded());
+  }
+
+  public void Test_NestedBudgetIsExceededWithParent() throws InterruptedException {
+    TimeBudget parent = TimeBudget.ofMillis(1);
+    TimeBudget nested = parent.limit(60_000);
+    TimeBudget unlimitedNested = parent.limit(0);
+    Thread.sleep(10);
+
+    Assert.assertTrue(nested.isExceeded());
+    Assert.assertTrue(unlimitedNested.isExceeded());
+  }
+
+  public void Test_RemainingTimeOfNestedBudget() throws InterruptedException {
+    Assert.assertEquals(TimeBudget.UNLIMITED.getRemainingMillis(), Long.MAX_VALUE);
+
+    TimeBudget parent = TimeBudget.ofMillis(60_000);
+    TimeBudget nested = parent.limit(30_000);
+    Assert.assertTrue(nested.getRemainingMillis() <= 30_000);
+    Assert.assertTrue(nested.getRemainingMillis() > 20_000);
+    Assert.assertTrue(parent.limit(0).getRemainingMillis() > 30_000);
+
+    TimeBudget exceeded = TimeBudget.ofMillis(1);
+    Thread.sleep(10);
+    Assert.assertEquals(exceeded.limit(60_000).getRemainingMillis(), 0);
+  }
+}